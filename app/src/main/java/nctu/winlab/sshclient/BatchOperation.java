@@ -0,0 +1,116 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+
+/**
+ * Setter operations which can be pipelined through SshShellClient.batch
+ *
+ * An operation is given as a JSON object naming the operation in "op" along
+ * with the arguments of the matching driver method, e.g.
+ * {"op": "setVxlanVtep", "vnid": "2000", "ip": "10.0.0.1", "mac": ""}.
+ */
+public final class BatchOperation {
+    private BatchOperation() {
+    }
+
+    /**
+     * Run a list of operations against a switch in one round trip
+     *
+     * @param client switch shell client
+     * @param specs operations
+     * @return reply with a result per operation, in order
+     */
+    public static ObjectNode run(SshShellClient client, ArrayNode specs) {
+        ObjectNode reply = mapper.createObjectNode();
+        reply.put("error", false);
+        reply.put("msg", "");
+        ArrayNode results = reply.putArray("results");
+
+        List<Supplier<ObjectNode>> ops = new ArrayList<>(specs.size());
+        for (JsonNode spec : specs) {
+            ops.add(parse(client, spec));
+        }
+        List<ObjectNode> replies = client.batch(ops);
+        for (int i = 0; i < replies.size(); i++) {
+            ObjectNode res = replies.get(i);
+            res.put("op", specs.get(i).path("op").asText());
+            results.add(res);
+            if (res.path("error").asBoolean(false)) {
+                reply.put("error", true);
+                reply.put("msg", "Some operations failed");
+            }
+        }
+        return reply;
+    }
+
+    private static Supplier<ObjectNode> parse(SshClient client, JsonNode spec) {
+        String op = spec.path("op").asText("");
+        switch (op) {
+            case "setController":
+                return as(client, SwitchClient.class, op,
+                          c -> c.setController(text(spec, "ip"), spec.path("port").asText("")));
+            case "unsetController":
+                return as(client, SwitchClient.class, op, c -> c.unsetController(text(spec, "ip")));
+            case "setVxlanSourceInterfaceLoopback":
+                return as(client, VxlanSwitch.class, op, c -> c.setVxlanSourceInterfaceLoopback(text(spec, "id")));
+            case "setVxlanVlan":
+                return as(client, VxlanSwitch.class, op, c -> c.setVxlanVlan(text(spec, "vnid"), text(spec, "vid")));
+            case "setVxlanVtep":
+                return as(client, VxlanSwitch.class, op,
+                          c -> c.setVxlanVtep(text(spec, "vnid"), text(spec, "ip"), spec.path("mac").asText("")));
+            case "setVxlanStatus":
+                return as(client, VxlanSwitch.class, op, c -> c.setVxlanStatus(spec.path("status").asBoolean()));
+            case "setVxlanTenantSystemLocal":
+                return as(client, VxlanSwitch.class, op,
+                          c -> c.setVxlanTenantSystemLocal(text(spec, "vni"), text(spec, "mac"), text(spec, "port"),
+                                                           spec.path("add").asBoolean(true)));
+            case "setVxlanTenantSystemRemote":
+                return as(client, VxlanSwitch.class, op,
+                          c -> c.setVxlanTenantSystemRemote(text(spec, "vni"), text(spec, "mac"), text(spec, "ip"),
+                                                            spec.path("add").asBoolean(true)));
+            case "setSwitchPortMode":
+                return as(client, VlanSwitch.class, op,
+                          c -> c.setSwitchPortMode(text(spec, "intf"), spec.path("mode").asText(null)));
+            case "setSwitchPortAccessVlan":
+                return as(client, VlanSwitch.class, op,
+                          c -> c.setSwitchPortAccessVlan(text(spec, "intf"), text(spec, "vlan")));
+            case "setVlanGateway":
+                return as(client, VlanSwitch.class, op,
+                          c -> c.setVlanGateway(text(spec, "vlan"), text(spec, "ip"), text(spec, "mask")));
+            case "addVlan":
+                return as(client, VlanSwitch.class, op, c -> c.addVlan(text(spec, "vlan")));
+            case "deleteVlan":
+                return as(client, VlanSwitch.class, op, c -> c.deleteVlan(text(spec, "vlan")));
+            default:
+                return () -> {
+                    throw new IllegalArgumentException("Unsupported batch operation: " + op);
+                };
+        }
+    }
+
+    private static <T> Supplier<ObjectNode> as(SshClient client, Class<T> type, String op,
+                                               Function<T, ObjectNode> call) {
+        return () -> {
+            if (!type.isInstance(client)) {
+                throw new IllegalArgumentException(op + " is not supported by " + client.model);
+            }
+            return call.apply(type.cast(client));
+        };
+    }
+
+    private static String text(JsonNode spec, String field) {
+        String value = spec.path(field).asText("");
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Missing field: " + field);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,117 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+
+/**
+ * Stops sending requests to a device which keeps failing
+ *
+ * After a number of consecutive connection or command failures the breaker
+ * opens, and requests are answered with an error at once instead of each
+ * waiting out the connect timeout. While it is open the device is probed
+ * now and then; the first success closes it again.
+ */
+public class CircuitBreaker {
+    public static final int DEFAULT_THRESHOLD = 3;
+    public static final long DEFAULT_PROBE_INTERVAL = 5000;
+
+    private int threshold = DEFAULT_THRESHOLD;
+    private long probeInterval = DEFAULT_PROBE_INTERVAL;
+    private int failures;
+    private boolean open;
+    private boolean probing;
+    private long nextProbe;
+    private long trips;
+    private String lastError = "";
+
+    /**
+     * Change when the breaker opens and how often it probes
+     *
+     * @param threshold consecutive failures opening the breaker; 0 never opens it
+     * @param probeInterval milliseconds between two probes of an open breaker
+     */
+    public synchronized void configure(int threshold, long probeInterval) {
+        this.threshold = threshold;
+        this.probeInterval = probeInterval;
+        if (threshold <= 0) {
+            open = false;
+        }
+    }
+
+    /**
+     * Record a command which completed, closing the breaker
+     */
+    public synchronized void success() {
+        failures = 0;
+        open = false;
+        probing = false;
+    }
+
+    /**
+     * Record a failed connection or command
+     *
+     * @param msg error message
+     */
+    public synchronized void failure(String msg) {
+        failures++;
+        lastError = String.valueOf(msg);
+        if (!open && threshold > 0 && failures >= threshold) {
+            open = true;
+            trips++;
+            nextProbe = System.currentTimeMillis() + probeInterval;
+        }
+    }
+
+    /**
+     * Whether requests should fail without trying the device
+     */
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Claim the next probe of an open breaker; the probe reports its
+     * outcome through success or failure, then calls endProbe
+     *
+     * @return whether a probe is due and no other probe runs
+     */
+    public synchronized boolean startProbe() {
+        if (!open || probing || System.currentTimeMillis() < nextProbe) {
+            return false;
+        }
+        probing = true;
+        return true;
+    }
+
+    /**
+     * Mark the end of a probe; an open breaker is probed again after the
+     * probe interval
+     */
+    public synchronized void endProbe() {
+        probing = false;
+        nextProbe = System.currentTimeMillis() + probeInterval;
+    }
+
+    /**
+     * Message of the error reply of a request refused by the open breaker
+     */
+    public synchronized String refusal() {
+        return "Device unreachable after " + failures + " consecutive failures, last: " + lastError;
+    }
+
+    /**
+     * Get the state of the breaker
+     *
+     * @return JSON object included fields: state (open or closed), failures,
+     *         trips and lastError
+     */
+    public synchronized ObjectNode stats() {
+        ObjectNode stats = mapper.createObjectNode();
+        stats.put("state", open ? "open" : "closed");
+        stats.put("failures", failures);
+        stats.put("trips", trips);
+        stats.put("lastError", lastError);
+        return stats;
+    }
+}
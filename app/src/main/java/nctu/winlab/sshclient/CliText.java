@@ -0,0 +1,221 @@
+package nctu.winlab.sshclient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Character scanning helpers for CLI output
+ *
+ * These replace String.split and regular expressions on the parsing paths
+ * of the drivers. Splitting follows String.split: a leading empty piece is
+ * kept, trailing empty pieces are dropped, and text without any separator
+ * comes back as a single piece.
+ */
+public final class CliText {
+    private static final String[] NONE = new String[0];
+
+    private CliText() {
+    }
+
+    /**
+     * Split text into lines, skipping empty lines; same as split("[\r\n]+")
+     *
+     * @param text CLI output
+     * @return lines
+     */
+    public static String[] lines(String text) {
+        List<String> pieces = new ArrayList<>();
+        int n = text.length();
+        int start = 0;
+        boolean found = false;
+        int i = 0;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (c != '\r' && c != '\n') {
+                i++;
+                continue;
+            }
+            found = true;
+            pieces.add(text.substring(start, i));
+            while (i < n && (text.charAt(i) == '\r' || text.charAt(i) == '\n')) {
+                i++;
+            }
+            start = i;
+        }
+        return finish(text, pieces, start, found);
+    }
+
+    /**
+     * Split a line into whitespace separated fields, without empty fields
+     *
+     * @param line one line of CLI output
+     * @return fields
+     */
+    public static String[] fields(String line) {
+        List<String> fields = new ArrayList<>();
+        int n = line.length();
+        int i = 0;
+        while (i < n) {
+            while (i < n && isBlank(line.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < n && !isBlank(line.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                fields.add(line.substring(start, i));
+            }
+        }
+        return fields.toArray(NONE);
+    }
+
+    /**
+     * Split text on any of the given literal separators, trying them in order
+     * at each position
+     *
+     * @param text text to split
+     * @param separators literal separators
+     * @return pieces between separators
+     */
+    public static String[] split(String text, String... separators) {
+        List<String> pieces = new ArrayList<>();
+        int n = text.length();
+        int start = 0;
+        boolean found = false;
+        int i = 0;
+        while (i < n) {
+            String sep = separatorAt(text, i, separators);
+            if (sep == null) {
+                i++;
+                continue;
+            }
+            found = true;
+            pieces.add(text.substring(start, i));
+            i += sep.length();
+            start = i;
+        }
+        return finish(text, pieces, start, found);
+    }
+
+    /**
+     * Split text right before every occurrence of a marker, keeping the
+     * marker at the start of the following piece
+     *
+     * @param text text to split
+     * @param marker literal marker
+     * @return pieces
+     */
+    public static String[] splitBefore(String text, String marker) {
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        int i = text.indexOf(marker, 1);
+        while (i > 0) {
+            pieces.add(text.substring(start, i));
+            start = i;
+            i = text.indexOf(marker, i + 1);
+        }
+        return finish(text, pieces, start, !pieces.isEmpty());
+    }
+
+    /**
+     * Find the first line reporting that the CLI rejected a command, such as
+     * "% Invalid input detected at '^' marker." or "Error: ..."
+     *
+     * @param text CLI output
+     * @return the trimmed line, or null if there is none
+     */
+    public static String errorLine(String text) {
+        for (String line : lines(text)) {
+            String l = line.strip();
+            if (l.startsWith("%") || l.startsWith("Error") || l.startsWith("ERROR")
+                    || l.startsWith("Invalid input") || l.startsWith("Incomplete command")
+                    || l.startsWith("Ambiguous command")) {
+                return l;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove every line break and double quote
+     *
+     * @param text text to clean
+     * @return text without "\r\n" and '"'
+     */
+    public static String removeBreaksAndQuotes(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (c == '\r' && i + 1 < n && text.charAt(i + 1) == '\n') {
+                i += 2;
+                continue;
+            }
+            if (c != '"') {
+                sb.append(c);
+            }
+            i++;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Whether a character may be part of a label: an ASCII letter or
+     * whitespace as understood by regular expressions
+     */
+    public static boolean isLabelChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isSpace(c);
+    }
+
+    public static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    public static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    public static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * End of the run of digits starting at a position
+     *
+     * @return index after the last digit, or from if there is none
+     */
+    public static int digits(String text, int from) {
+        int i = from;
+        while (i < text.length() && isDigit(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static String separatorAt(String text, int i, String[] separators) {
+        for (String sep : separators) {
+            if (text.startsWith(sep, i)) {
+                return sep;
+            }
+        }
+        return null;
+    }
+
+    private static String[] finish(String text, List<String> pieces, int start, boolean found) {
+        if (!found) {
+            return new String[] {text};
+        }
+        pieces.add(text.substring(start));
+        int size = pieces.size();
+        while (size > 0 && pieces.get(size - 1).isEmpty()) {
+            size--;
+        }
+        return pieces.subList(0, size).toArray(NONE);
+    }
+}
@@ -0,0 +1,156 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.List;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+
+/**
+ * Layout of a table printed by a CLI command
+ *
+ * Names the whitespace separated fields that make up a record, and how many
+ * header and footer lines surround the records. A record normally is one
+ * line; with recordsStartingWith it starts at every line with the given
+ * prefix and may take fields from the lines after it. Records lacking a
+ * field are skipped. Specs are built once per model and reused.
+ */
+public final class ColumnSpec {
+    private final int header;
+    private final int footer;
+    private final String recordPrefix;
+    private final Column[] columns;
+
+    private ColumnSpec(Builder builder) {
+        this.header = builder.header;
+        this.footer = builder.footer;
+        this.recordPrefix = builder.recordPrefix;
+        this.columns = builder.columns.toArray(new Column[0]);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Parse the records of a table
+     *
+     * @param text CLI output
+     * @return one JSON object per record, fields named after the columns
+     */
+    public ArrayNode parse(String text) {
+        ArrayNode records = mapper.createArrayNode();
+        String[] lines = CliText.lines(text);
+        int end = lines.length - footer;
+        for (int i = header; i < end; i++) {
+            if (recordPrefix != null && !lines[i].startsWith(recordPrefix)) {
+                continue;
+            }
+            ObjectNode record = record(lines, i, end);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private ObjectNode record(String[] lines, int first, int end) {
+        ObjectNode record = mapper.createObjectNode();
+        String[][] fields = new String[2][];
+        for (Column column : columns) {
+            int line = first + column.line;
+            if (line >= end) {
+                return null;
+            }
+            if (column.line >= fields.length) {
+                String[][] grown = new String[column.line + 1][];
+                System.arraycopy(fields, 0, grown, 0, fields.length);
+                fields = grown;
+            }
+            if (fields[column.line] == null) {
+                fields[column.line] = CliText.fields(lines[line]);
+            }
+            if (column.index >= fields[column.line].length) {
+                return null;
+            }
+            record.put(column.name, fields[column.line][column.index]);
+        }
+        return record;
+    }
+
+    public static final class Builder {
+        private int header;
+        private int footer;
+        private String recordPrefix;
+        private final List<Column> columns = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Number of lines before the first record
+         */
+        public Builder header(int lines) {
+            this.header = lines;
+            return this;
+        }
+
+        /**
+         * Number of lines after the last record
+         */
+        public Builder footer(int lines) {
+            this.footer = lines;
+            return this;
+        }
+
+        /**
+         * Start a record at every line beginning with prefix
+         */
+        public Builder recordsStartingWith(String prefix) {
+            this.recordPrefix = prefix;
+            return this;
+        }
+
+        /**
+         * Name the next field of the first line of a record
+         */
+        public Builder column(String name) {
+            int index = 0;
+            for (Column column : columns) {
+                if (column.line == 0) {
+                    index = Math.max(index, column.index + 1);
+                }
+            }
+            return column(0, index, name);
+        }
+
+        /**
+         * Name a field of a record
+         *
+         * @param line line of the field, counted from the first line of the record
+         * @param index position of the field in its line
+         * @param name JSON field name
+         */
+        public Builder column(int line, int index, String name) {
+            columns.add(new Column(line, index, name));
+            return this;
+        }
+
+        public ColumnSpec build() {
+            return new ColumnSpec(this);
+        }
+    }
+
+    private static final class Column {
+        private final int line;
+        private final int index;
+        private final String name;
+
+        private Column(int line, int index, String name) {
+            this.line = line;
+            this.index = index;
+            this.name = name;
+        }
+    }
+}
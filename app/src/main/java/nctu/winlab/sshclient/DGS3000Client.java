@@ -9,18 +9,24 @@ import static nctu.winlab.sshclient.SSHConstants.ANSI_GREEN;
 import static nctu.winlab.sshclient.SSHConstants.ANSI_RESET;
 
 import java.io.FileWriter;
-import java.util.Arrays;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
 
 public class DGS3000Client extends SshShellClient implements VlanSwitch {
     private static Logger log = Logger.getLogger(DGS3630Client.class.getName());
+    // Each VLAN is printed as a block starting with "VID : <id>  VLAN Name : <name>"
+    static final ColumnSpec VLANS = ColumnSpec.builder().header(2).recordsStartingWith("VID")
+            .column(0, 2, "id").column(0, 5, "name").column(1, 3, "type").build();
 
     public DGS3000Client(String ip, String port, String username, String password, String model) {
         super(ip, port, username, password);
         this.model = model;
     }
 
+    @Override
+    protected String pagingOffCommand() {
+        return "disable clipaging";
+    }
+
     
     @Override
     public ObjectNode setSwitchPortMode(String intf, String mode) {
@@ -43,21 +49,8 @@ public class DGS3000Client extends SshShellClient implements VlanSwitch {
         ArrayNode vlanList = res.putArray("vlans");
 
         try {
-            String[] reply = commander.addMainCmd("show vlan", "a").sendCmd().recvCmd().split("[\r\n]+");
-            String[] lines = Arrays.copyOfRange(reply, 2, reply.length);
-
-            for(int i = 0; i < lines.length; i++) {
-                if(lines[i].startsWith("VID")) {
-                    String[] infos1 = (String[])Stream.of(lines[i].split("[ \t]+")).filter(j -> !j.isEmpty()).toArray(x$0 -> new String[x$0]);
-                    String[] infos2 = (String[])Stream.of(lines[i+1].split("[ \t]+")).filter(j -> !j.isEmpty()).toArray(x$0 -> new String[x$0]);
-                 
-                    ObjectNode c = mapper().createObjectNode();
-                    c.put("id", infos1[2]);
-                    c.put("name", infos1[5]);
-                    c.put("type", infos2[3]);
-                    vlanList.add((JsonNode) c);        
-                }
-            }
+            String reply = commander.addMainCmd("show vlan", "a").sendCmd().recvCmd();
+            vlanList.addAll(parseVlans(reply));
         }
         catch (Exception e) {
             res.put("error", true);
@@ -66,6 +59,10 @@ public class DGS3000Client extends SshShellClient implements VlanSwitch {
         return res;
     }
     
+    ArrayNode parseVlans(String reply) {
+        return VLANS.parse(reply);
+    }
+
     @Override
     public ObjectNode addVlan(String vlanId) {
         ObjectNode res = createGeneralReply();
@@ -74,6 +71,7 @@ public class DGS3000Client extends SshShellClient implements VlanSwitch {
             String reply2 = commander.addMainCmd("config vlan vlanid " + vlanId + " add tagged 1-28").sendCmd().recvCmd();
             res.put("raw1", reply);
             res.put("raw2", reply);            
+            markRejected(res, reply + reply2);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -88,6 +86,7 @@ public class DGS3000Client extends SshShellClient implements VlanSwitch {
         try {
             String reply = commander.addMainCmd("delete vlan vlanid " + vlanId).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
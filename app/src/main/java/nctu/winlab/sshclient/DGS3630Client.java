@@ -9,35 +9,41 @@ import static nctu.winlab.sshclient.SSHConstants.ANSI_GREEN;
 import static nctu.winlab.sshclient.SSHConstants.ANSI_RESET;
 
 import java.io.FileWriter;
-import java.util.Arrays;
 import java.util.logging.Logger;
 
 public class DGS3630Client extends SshShellClient implements SwitchClient {
     private static Logger log = Logger.getLogger(DGS3630Client.class.getName());
+    static final ColumnSpec CONTROLLERS = ColumnSpec.builder().header(11).footer(1)
+            .column("ip").column("port").column("mode").column("role").build();
 
     public DGS3630Client(String ip, String port, String username, String password, String model) {
         super(ip, port, username, password);
         this.model = model;
     }
 
+    @Override
+    protected CliMode initialMode() {
+        // Administrators log in at the privileged prompt
+        return CliMode.PRIVILEGED;
+    }
+
+    @Override
+    protected String enterCommand(CliMode mode, String arg) {
+        return mode == CliMode.CONFIG ? "configure terminal" : super.enterCommand(mode, arg);
+    }
+
     @Override
     public ObjectNode getController() {
         ObjectNode res = createGeneralReply();
         ArrayNode controllerList = res.putArray("controllers");
         String rawoutput = "";
         try {
-            String[] reply = commander.addMainCmd("show openflow configuration", new String[0]).sendCmd().recvCmd().split("[\r\n]+");
-            String[] controllers = Arrays.copyOfRange(reply, 11, reply.length - 1);
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show openflow configuration", new String[0]).sendCmd().recvCmd();
             rawoutput += String.format("%-17s%-7s%-6s%s\n", "IP", "Port", "Mode", "Role");
-            for (String controller : controllers) {
-                String[] infos = controller.split("[ \t]+");
-                ObjectNode c = mapper().createObjectNode();
-                rawoutput += String.format("%-17s%-7s%-6s%s\n", infos[0], infos[1], infos[2], infos[3]);
-                c.put("ip", infos[0]);
-                c.put("port", infos[1]);
-                c.put("mode", infos[2]);
-                c.put("role", infos[3]);
-                controllerList.add((JsonNode) c);
+            for (JsonNode c : CONTROLLERS.parse(reply)) {
+                rawoutput += String.format("%-17s%-7s%-6s%s\n", c.get("ip").asText(), c.get("port").asText(),
+                                           c.get("mode").asText(), c.get("role").asText());
+                controllerList.add(c);
             }
             res.put("raw", rawoutput);
         }
@@ -52,8 +58,9 @@ public class DGS3630Client extends SshShellClient implements SwitchClient {
         ObjectNode res = createGeneralReply();
         try {
             port = port.isEmpty() ? port : " service-port " + port;
-            String reply = commander.addCmd("configure terminal").addMainCmd("openflow controller " + ip + port, new String[0]).addCmd("exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addMainCmd("openflow controller " + ip + port, new String[0]).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -66,8 +73,9 @@ public class DGS3630Client extends SshShellClient implements SwitchClient {
     public ObjectNode unsetController(String ip) {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("configure terminal").addMainCmd("no openflow controller " + ip, new String[0]).addCmd("exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addMainCmd("no openflow controller " + ip, new String[0]).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -81,7 +89,7 @@ public class DGS3630Client extends SshShellClient implements SwitchClient {
         ObjectNode res = createGeneralReply();
         ArrayNode flowList = res.putArray("flows");
         try {
-            String reply = commander.addMainCmd("show openflow flows", "a").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show openflow flows", "a").sendCmd().recvCmd();
             res.put("raw", reply);
         }
         catch (Exception e) {
@@ -95,7 +103,7 @@ public class DGS3630Client extends SshShellClient implements SwitchClient {
     public ObjectNode getGroups() {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addMainCmd("show openflow group-desc", "a").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show openflow group-desc", "a").sendCmd().recvCmd();
             res.put("raw", reply);
         }
         catch (Exception e) {
@@ -108,7 +116,7 @@ public class DGS3630Client extends SshShellClient implements SwitchClient {
     @Override
     public void getLogs(FileWriter writer) {
         try {
-            String reply = commander.addMainCmd("show logging", "q").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show logging", "q").sendCmd().recvCmd();
             String title = String.format(ANSI_GREEN + ANSI_BOLD + "\n%s -- %s\n" + ANSI_RESET, ip, model);
             if (writer == null) {
                 log.info(title);
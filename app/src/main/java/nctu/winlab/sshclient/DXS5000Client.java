@@ -11,12 +11,21 @@ import static nctu.winlab.sshclient.SSHConstants.ANSI_RESET;
 import java.io.FileWriter;
 import java.util.Arrays;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Stream;
 
 public class DXS5000Client extends SshShellClient implements SwitchClient, VxlanSwitch, VlanSwitch {
     private static Logger log = Logger.getLogger(DXS5000Client.class.getName());
+    static final ColumnSpec CONTROLLERS = ColumnSpec.builder().header(3)
+            .column("ip").column("port").column("mode").column("role").build();
+    static final ColumnSpec TENANT_SYSTEMS_LOCAL = ColumnSpec.builder().header(3)
+            .column("vni").column("mac").column("port").column("appIfIndex").column("entryType").build();
+    static final ColumnSpec TENANT_SYSTEMS_REMOTE = ColumnSpec.builder().header(3)
+            .column("vni").column("mac").column("vtep").column("appIfIndex").column("entryType").build();
+    static final ColumnSpec VLANS = ColumnSpec.builder().header(3)
+            .column("id").column("name").column("type").build();
+    private static final String GROUP_TYPE = "Group Type : ";
+    static final KeyValueSpec GROUP_COUNTERS = KeyValueSpec.colon(KeyValueSpec.Value.NUMBER);
+    static final KeyValueSpec BUCKET_FIELDS = KeyValueSpec.optionalColon(
+            KeyValueSpec.Value.NA, KeyValueSpec.Value.MAC, KeyValueSpec.Value.PORT);
 
     public DXS5000Client(String ip, String port, String username, String password, String model) {
         super(ip, port, username, password);
@@ -29,18 +38,12 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         ArrayNode controllerList = res.putArray("controllers");
         String rawoutput = "";
         try {
-            String[] reply = commander.addCmd("enable").addMainCmd("show openflow configured controller", new String[0]).addCmd("exit").sendCmd().recvCmd().split("[\r\n]+");
-            String[] controllers = Arrays.copyOfRange(reply, 3, reply.length);
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show openflow configured controller", new String[0]).sendCmd().recvCmd();
             rawoutput += String.format("%-17s%-7s%-6s%s\n", "IP", "Port", "Mode", "Role");
-            for (String controller : controllers) {
-                String[] infos = (String[])Stream.of(controller.split("[ \t]+")).filter(i -> !i.isEmpty()).toArray(x$0 -> new String[x$0]);
-                ObjectNode c = mapper().createObjectNode();
-                rawoutput += String.format("%-17s%-7s%-6s%s\n", infos[0], infos[1], infos[2], infos[3]);
-                c.put("ip", infos[0]);
-                c.put("port", infos[1]);
-                c.put("mode", infos[2]);
-                c.put("role", infos[3]);
-                controllerList.add((JsonNode) c);
+            for (JsonNode c : CONTROLLERS.parse(reply)) {
+                rawoutput += String.format("%-17s%-7s%-6s%s\n", c.get("ip").asText(), c.get("port").asText(),
+                                           c.get("mode").asText(), c.get("role").asText());
+                controllerList.add(c);
             }
             res.put("raw", rawoutput);
         }
@@ -56,8 +59,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         ObjectNode res = createGeneralReply();
         String proto = "tcp";
         try {
-            String reply = commander.addCmd("enable", "configure").addMainCmd("openflow controller " + ip + " " + port + " " + proto).addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addMainCmd("openflow controller " + ip + " " + port + " " + proto).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -70,8 +74,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     public ObjectNode unsetController(String ip) {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("enable", "configure").addMainCmd("no openflow controller " + ip).addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addMainCmd("no openflow controller " + ip).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -85,18 +90,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         ObjectNode res = createGeneralReply();
         ArrayNode flowList = res.putArray("flows");
         try {
-            String reply = commander.addCmd("enable").addMainCmd("show openflow installed flows", " ", " ", " ", " ").addCmd("exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show openflow installed flows", " ", " ", " ", " ").sendCmd().recvCmd();
             res.put("raw", reply);
-            for (String flow : reply.split("(?=\r\nFlow type)")) {
-                ObjectNode flowNode = mapper().createObjectNode();
-                String[] items = flow.split("(Match criteria:|Actions:|Status:)");
-                flowNode.put("type", processFlowType(items[0]));
-                flowNode.set("matches", (JsonNode)processKeyValue(items[1]));
-                flowNode.set("actions", (JsonNode)processKeyValue(items[2]));
-                flowNode.set("status", (JsonNode)processKeyValue(items[3]));
-                // add flow into flow list
-                flowList.add((JsonNode)flowNode);
-            }
+            flowList.addAll(parseFlows(reply));
         }
         catch (Exception e) {
             res.put("error", true);
@@ -109,7 +105,7 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     public ObjectNode getGroups() {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("enable").addMainCmd("show openflow installed groups", " ", " ", " ", " ").addCmd("exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show openflow installed groups", " ", " ", " ", " ").sendCmd().recvCmd();
             res.put("raw", reply);
             res.set("groups", (JsonNode) processGroups(reply));
         }
@@ -123,7 +119,7 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     @Override
     public void getLogs(FileWriter writer) {
         try {
-            String reply = commander.addCmd("enable").addMainCmd("show logging buffered", "q").addCmd("exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show logging buffered", "q").sendCmd().recvCmd();
             String title = String.format(ANSI_GREEN + ANSI_BOLD + "\n%s -- %s\n" + ANSI_RESET, ip, model);
             if (writer == null) {
                 log.info(title);
@@ -142,8 +138,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     public ObjectNode setVxlanSourceInterfaceLoopback(String loopbackId) {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("enable", "configure").addCmd("vxlan enable").addMainCmd("vxlan source-interface loopback " + loopbackId, new String[0]).addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addCmd("vxlan enable").addMainCmd("vxlan source-interface loopback " + loopbackId, new String[0]).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -156,8 +153,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     public ObjectNode setVxlanVlan(String vnid, String vid) {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("enable", "configure").addCmd("vxlan enable").addMainCmd("vxlan " + vnid + " vlan " + vid, new String[0]).addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addCmd("vxlan enable").addMainCmd("vxlan " + vnid + " vlan " + vid, new String[0]).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -172,8 +170,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         log.info("vxlan " + vnid + " vtep " + ip + (mac.isEmpty() ? "" : new StringBuilder().append(" tenant-system ").append(mac).toString()));
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("enable", "configure").addCmd("vxlan enable").addMainCmd("vxlan " + vnid + " vtep " + ip + (mac.isEmpty() ? "" : new StringBuilder().append(" tenant-system ").append(mac).toString()), new String[0]).addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addCmd("vxlan enable").addMainCmd("vxlan " + vnid + " vtep " + ip + (mac.isEmpty() ? "" : new StringBuilder().append(" tenant-system ").append(mac).toString()), new String[0]).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -187,8 +186,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         ObjectNode res = createGeneralReply();
         try {
             String isopen = flag ? "" : "no ";
-            String reply = commander.addCmd("enable", "configure").addMainCmd(isopen + "vxlan enable").addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addMainCmd(isopen + "vxlan enable").sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -202,8 +202,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         ObjectNode res = createGeneralReply();
         try {
             String isopen = add ? "" : "no ";
-            String reply = commander.addCmd("enable", "configure").addCmd("interface " + port).addMainCmd(isopen + "vxlan " + vni + " tenant-system " + mac).addCmd("exit", "exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.INTERFACE, port).addMainCmd(isopen + "vxlan " + vni + " tenant-system " + mac).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -217,8 +218,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         ObjectNode res = createGeneralReply();
         try {
             String isopen = add ? "" : "no ";
-            String reply = commander.addCmd("enable", "configure").addMainCmd(isopen + "vxlan " + vni + " vtep " + remoteIp + " tenant-system " + mac).addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addMainCmd(isopen + "vxlan " + vni + " vtep " + remoteIp + " tenant-system " + mac).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -232,18 +234,8 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         ObjectNode res = createGeneralReply();
         ArrayNode hostList = res.putArray("hosts");
         try {
-            String[] reply = commander.addCmd("enable").addMainCmd("show vxlan tenant-systems local", new String[0]).addCmd("exit").sendCmd().recvCmd().split("[\r\n]+");
-            String[] hosts = Arrays.copyOfRange(reply, 3, reply.length);
-            for (String host : hosts) {
-                String[] infos = (String[])Stream.of(host.split("[ \t]+")).filter(i -> !i.isEmpty()).toArray(x$0 -> new String[x$0]);
-                ObjectNode c = mapper().createObjectNode();
-                c.put("vni", infos[0]);
-                c.put("mac", infos[1]);
-                c.put("port", infos[2]);
-                c.put("appIfIndex", infos[3]);
-                c.put("entryType", infos[4]);
-                hostList.add((JsonNode) c);
-            }
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show vxlan tenant-systems local", new String[0]).sendCmd().recvCmd();
+            hostList.addAll(TENANT_SYSTEMS_LOCAL.parse(reply));
         }
         catch (Exception e) {
             res.put("error", true);
@@ -257,18 +249,8 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         ObjectNode res = createGeneralReply();
         ArrayNode hostList = res.putArray("hosts");
         try {
-            String[] reply = commander.addCmd("enable").addMainCmd("show vxlan tenant-systems remote", new String[0]).addCmd("exit").sendCmd().recvCmd().split("[\r\n]+");
-            String[] hosts = Arrays.copyOfRange(reply, 3, reply.length);
-            for (String host : hosts) {
-                String[] infos = (String[])Stream.of(host.split("[ \t]+")).filter(i -> !i.isEmpty()).toArray(x$0 -> new String[x$0]);
-                ObjectNode c = mapper().createObjectNode();
-                c.put("vni", infos[0]);
-                c.put("mac", infos[1]);
-                c.put("vtep", infos[2]);
-                c.put("appIfIndex", infos[3]);
-                c.put("entryType", infos[4]);
-                hostList.add((JsonNode) c);
-            }
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show vxlan tenant-systems remote", new String[0]).sendCmd().recvCmd();
+            hostList.addAll(TENANT_SYSTEMS_REMOTE.parse(reply));
         }
         catch (Exception e) {
             res.put("error", true);
@@ -281,7 +263,7 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     public ObjectNode showVxlan() {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("enable", "configure").addMainCmd("show vxlan").addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addMainCmd("show vxlan").sendCmd().recvCmd();
             res.put("raw", reply);
         }
         catch (Exception e) {
@@ -295,7 +277,7 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     public ObjectNode testConnection() {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addMainCmd("enable", "configure").addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.CONFIG).addMainCmd("show vxlan").sendCmd().recvCmd();
             res.put("raw", reply);
         }
         catch (Exception e) {
@@ -312,8 +294,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         log.info(mode == null ? "no switchport mode": ("switchport mode " + mode));
 
         try {
-            String reply = commander.addCmd("enable", "configure").addCmd("interface "+ intf).addMainCmd(mode == null ? "no switchport mode": ("switchport mode " + mode)).addCmd("exit", "exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.INTERFACE, intf).addMainCmd(mode == null ? "no switchport mode": ("switchport mode " + mode)).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -328,8 +311,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         log.info("switchport access vlan " + vlan);
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("enable", "configure").addCmd("interface " + intf).addMainCmd("switchport access vlan " + vlan).addCmd("exit", "exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.INTERFACE, intf).addMainCmd("switchport access vlan " + vlan).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -342,8 +326,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     public ObjectNode setVlanGateway(String vlan, String ip, String mask) {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("enable", "configure").addCmd("interface vlan " + vlan).addMainCmd("routing", "ip address " + ip + " " + mask + "\n").addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.INTERFACE, "vlan " + vlan).addMainCmd("routing", "ip address " + ip + " " + mask + "\n").sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -359,17 +344,8 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         ArrayNode vlanList = res.putArray("vlans");
 
         try {
-            String[] reply = commander.addCmd("enable").addMainCmd("show vlan", new String[0]).addCmd("exit").sendCmd().recvCmd().split("[\r\n]+");
-            String[] vlans = Arrays.copyOfRange(reply, 3, reply.length);
-
-            for (String vlan : vlans) {
-                String[] infos = (String[])Stream.of(vlan.split("[ \t]+")).filter(i -> !i.isEmpty()).toArray(x$0 -> new String[x$0]);
-                ObjectNode c = mapper().createObjectNode();
-                c.put("id", infos[0]);
-                c.put("name", infos[1]);
-                c.put("type", infos[2]);
-                vlanList.add((JsonNode) c);
-            }
+            String reply = commander.mode(CliMode.PRIVILEGED).addMainCmd("show vlan", new String[0]).sendCmd().recvCmd();
+            vlanList.addAll(VLANS.parse(reply));
 
         }
         catch (Exception e) {
@@ -383,8 +359,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     public ObjectNode addVlan(String vlanId) {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("enable", "vlan database").addMainCmd("vlan " + vlanId).addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.VLAN_DATABASE).addMainCmd("vlan " + vlanId).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -397,8 +374,9 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     public ObjectNode deleteVlan(String vlanId) {
         ObjectNode res = createGeneralReply();
         try {
-            String reply = commander.addCmd("enable", "vlan database").addMainCmd("no vlan " + vlanId).addCmd("exit", "exit").sendCmd().recvCmd();
+            String reply = commander.mode(CliMode.VLAN_DATABASE).addMainCmd("no vlan " + vlanId).sendCmd().recvCmd();
             res.put("raw", reply);
+            markRejected(res, reply);
         }
         catch (Exception e) {
             res.put("error", true);
@@ -408,19 +386,34 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
     }
 
 
+    ArrayNode parseFlows(String reply) {
+        ArrayNode flowList = mapper().createArrayNode();
+        for (String flow : CliText.splitBefore(reply, "\r\nFlow type")) {
+            ObjectNode flowNode = mapper().createObjectNode();
+            String[] items = CliText.split(flow, "Match criteria:", "Actions:", "Status:");
+            flowNode.put("type", processFlowType(items[0]));
+            flowNode.set("matches", (JsonNode)processKeyValue(items[1]));
+            flowNode.set("actions", (JsonNode)processKeyValue(items[2]));
+            flowNode.set("status", (JsonNode)processKeyValue(items[3]));
+            // add flow into flow list
+            flowList.add((JsonNode)flowNode);
+        }
+        return flowList;
+    }
+
     private String processFlowType(String flowType) {
-        return flowType.replace("Flow type ", "").replace("DOT", ".").replaceAll("\r\n|\"", "");
+        return CliText.removeBreaksAndQuotes(flowType.replace("Flow type ", "").replace("DOT", "."));
     }
 
     private ObjectNode processKeyValue(String raw) {
-        String[] lineFields = raw.split("\r\n");
+        String[] lineFields = CliText.split(raw, "\r\n");
         ObjectNode dictNode = mapper().createObjectNode();
         for (String line : lineFields) {
-            String[] patterns = line.split(" : ");
+            String[] patterns = CliText.split(line, " : ");
             if ((line = line.strip()).length() == 0)
                 continue;
             for (String pat : patterns) {
-                String value = pat.replaceFirst("([a-zA-Z\\s]+)(?<!\\w{2}:\\w{2}:\\w{2})", "");
+                String value = removeLabel(pat);
                 String key = pat.replace(value, "").strip();
                 value = value.replace(":", "").strip();
                 dictNode.put(key, value);
@@ -429,36 +422,70 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
         return dictNode;
     }
 
-    private ArrayNode processGroups(String raw) {
+    // Drop the first run of letters and spaces, unless it ends the third
+    // pair of a MAC address
+    static String removeLabel(String pat) {
+        int n = pat.length();
+        int start = 0;
+        while (start < n) {
+            if (!CliText.isLabelChar(pat.charAt(start))) {
+                start++;
+                continue;
+            }
+            int runEnd = start;
+            while (runEnd < n && CliText.isLabelChar(pat.charAt(runEnd))) {
+                runEnd++;
+            }
+            for (int end = runEnd; end > start; end--) {
+                if (!endsMacTriplet(pat, end)) {
+                    return pat.substring(0, start) + pat.substring(end);
+                }
+            }
+            start = runEnd;
+        }
+        return pat;
+    }
+
+    static boolean endsMacTriplet(String pat, int end) {
+        if (end < 8) {
+            return false;
+        }
+        for (int i = 0; i < 8; i++) {
+            char c = pat.charAt(end - 8 + i);
+            if (i % 3 == 2 ? c != ':' : !CliText.isWordChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    ArrayNode processGroups(String raw) {
         ObjectNode group = null;
         ObjectNode bucket = null;
         ArrayNode groups = mapper().createArrayNode();
         ArrayNode buckets = null;
-        String[] rawGroups = raw.split("[\r\n]+");
+        String[] rawGroups = CliText.lines(raw);
         String[] reducedRawGroups = Arrays.copyOfRange(rawGroups, 7, rawGroups.length);
         int state = -1;
         for (String line : reducedRawGroups) {
-            String key;
-            Matcher matcher;
-            String value;
-            Pattern pattern;
             if (line.indexOf("Group Id") == 0) {
                 state = 0;
                 group = mapper().createObjectNode();
                 groups.add((JsonNode)group);
                 buckets = group.putArray("buckets");
-                pattern = Pattern.compile("(\\d+)");
-                matcher = pattern.matcher(line);
-                if (!matcher.find()) continue;
-                group.put("id", Integer.parseInt(matcher.group(1).strip()));
+                int start = 0;
+                while (start < line.length() && !CliText.isDigit(line.charAt(start))) {
+                    start++;
+                }
+                if (start == line.length()) continue;
+                group.put("id", Integer.parseInt(line.substring(start, CliText.digits(line, start))));
                 continue;
             }
             if (line.contains("Group Type")) {
                 state = 1;
-                pattern = Pattern.compile("Group Type : (.*)");
-                matcher = pattern.matcher(line);
-                if (!matcher.find()) continue;
-                group.put("type", matcher.group(1).strip());
+                int start = line.indexOf(GROUP_TYPE);
+                if (start < 0) continue;
+                group.put("type", line.substring(start + GROUP_TYPE.length()).strip());
                 continue;
             }
             if (line.contains("Bucket entry list for group")) {
@@ -468,24 +495,17 @@ public class DXS5000Client extends SshShellClient implements SwitchClient, Vxlan
                 continue;
             }
             if (state == 1) {
-                pattern = Pattern.compile("([a-zA-Z\\s]+):[\\s]+(\\d+)");
-                matcher = pattern.matcher(line);
-                while (matcher.find()) {
-                    key = matcher.group(1).strip();
-                    value = matcher.group(2).strip();
-                    group.put(key, value);
-                }
+                ObjectNode target = group;
+                GROUP_COUNTERS.forEach(line, (key, value) -> target.put(key, value));
                 continue;
             }
             if (state != 2) continue;
-            pattern = Pattern.compile("([a-zA-Z\\s]+|Output port):?[\\s]+(NA|\\w{2}(:\\w{2}){5}|\\d+(\\/\\d+)?)");
-            matcher = pattern.matcher(line);
-            while (matcher.find()) {
-                key = matcher.group(1).strip();
-                value = matcher.group(2).strip();
-                if (key.contains("Index")) continue;
-                bucket.put(key, value);
-            }
+            ObjectNode target = bucket;
+            BUCKET_FIELDS.forEach(line, (key, value) -> {
+                if (!key.contains("Index")) {
+                    target.put(key, value);
+                }
+            });
         }
         return groups;
     }
@@ -0,0 +1,150 @@
+package nctu.winlab.sshclient;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Mailbox of requests for one device
+ *
+ * At most a fixed number of requests use the device at once (one for an
+ * interactive shell); the rest wait in arrival order without holding a
+ * thread. A request gives its slot back by running the release callback it
+ * is started with, which lets it keep the device even after its caller
+ * stopped waiting for it.
+ */
+public class DeviceCommandQueue {
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int permits;
+    private int running;
+    private long completed;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    public DeviceCommandQueue(int permits) {
+        this.permits = permits;
+    }
+
+    /**
+     * Change how many requests may use the device at once
+     *
+     * @param permits number of concurrent requests
+     */
+    public void setPermits(int permits) {
+        List<Runnable> ready;
+        synchronized (this) {
+            this.permits = permits;
+            ready = pollReady();
+        }
+        ready.forEach(Runnable::run);
+    }
+
+    /**
+     * Queue a request for the device
+     *
+     * @param task starts the request once the device is free; receives the
+     *             callback to run when the request no longer uses the device
+     * @return future completed like the future returned by task
+     */
+    public <T> CompletableFuture<T> submit(Function<Runnable, CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+
+        Runnable start = () -> {
+            recordWait(System.nanoTime() - queuedAt);
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    finished();
+                }
+            };
+            try {
+                task.apply(release).whenComplete((value, ex) -> {
+                    if (ex != null) {
+                        result.completeExceptionally(ex);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (RuntimeException e) {
+                release.run();
+                result.completeExceptionally(e);
+            }
+        };
+
+        List<Runnable> ready;
+        synchronized (this) {
+            waiting.add(start);
+            ready = pollReady();
+        }
+        ready.forEach(Runnable::run);
+        return result;
+    }
+
+    /**
+     * Number of requests waiting for the device
+     */
+    public synchronized int depth() {
+        return waiting.size();
+    }
+
+    /**
+     * Number of requests currently using the device
+     */
+    public synchronized int running() {
+        return running;
+    }
+
+    /**
+     * Number of requests which finished using the device
+     */
+    public synchronized long completed() {
+        return completed;
+    }
+
+    /**
+     * Average time in milliseconds a request waited for the device
+     */
+    public synchronized double averageWait() {
+        long started = completed + running;
+        return started == 0 ? 0 : (double) totalWaitNanos / started / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Longest time in milliseconds a request waited for the device
+     */
+    public synchronized double maxWait() {
+        return (double) maxWaitNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private synchronized void recordWait(long nanos) {
+        totalWaitNanos += nanos;
+        maxWaitNanos = Math.max(maxWaitNanos, nanos);
+    }
+
+    private void finished() {
+        List<Runnable> ready;
+        synchronized (this) {
+            running--;
+            completed++;
+            ready = pollReady();
+        }
+        ready.forEach(Runnable::run);
+    }
+
+    // Must be called while holding the lock; the returned requests are
+    // started after the lock is dropped
+    private List<Runnable> pollReady() {
+        List<Runnable> ready = new ArrayList<>();
+        while (running < permits && !waiting.isEmpty()) {
+            running++;
+            ready.add(waiting.poll());
+        }
+        return ready;
+    }
+}
@@ -0,0 +1,154 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Runs a per-device operation on a bounded pool of workers
+ *
+ * Each device gets its own deadline, counted from the moment its operation
+ * starts running; a device which misses it is interrupted and answered with
+ * an error reply, so one slow device never holds up the others. A request
+ * may also bring a deadline of its own, which cuts the device deadline short.
+ */
+public class FanOutExecutor {
+    public static final int DEFAULT_PARALLELISM = 16;
+    public static final long DEFAULT_DEVICE_TIMEOUT = 60000;
+    public static final String DEADLINE_PASSED = "Request deadline passed";
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService watchdog;
+    private volatile long deviceTimeout;
+
+    public FanOutExecutor(int parallelism, long deviceTimeout) {
+        this.workers = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), groupedThreads("sshclient", "fanout-%d"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(groupedThreads("sshclient", "fanout-watchdog"));
+        this.deviceTimeout = deviceTimeout;
+    }
+
+    /**
+     * Change the number of devices operated on at the same time
+     *
+     * @param parallelism maximum number of concurrent device operations
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism should be positive");
+        }
+        if (parallelism > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(parallelism);
+            workers.setCorePoolSize(parallelism);
+        } else {
+            workers.setCorePoolSize(parallelism);
+            workers.setMaximumPoolSize(parallelism);
+        }
+    }
+
+    /**
+     * Change the time a single device operation may take
+     *
+     * @param deviceTimeout deadline in milliseconds
+     */
+    public void setDeviceTimeout(long deviceTimeout) {
+        this.deviceTimeout = deviceTimeout;
+    }
+
+    /**
+     * Schedule an operation against one device
+     *
+     * @param name device name
+     * @param op operation producing the reply of a device
+     * @return future completed with the device reply, an error reply if the
+     *         operation throws, or a timeout reply if the deadline passes
+     */
+    public CompletableFuture<ObjectNode> submit(String name, Function<String, ObjectNode> op) {
+        return submit(name, op, 0);
+    }
+
+    /**
+     * Schedule an operation against one device, to be ended by the device
+     * deadline or the request deadline, whichever comes first
+     *
+     * @param name device name
+     * @param op operation producing the reply of a device
+     * @param deadline System.nanoTime() by which the request must be
+     *        answered, or 0 for none
+     * @return future completed as by {@link #submit(String, Function)}
+     */
+    public CompletableFuture<ObjectNode> submit(String name, Function<String, ObjectNode> op, long deadline) {
+        CompletableFuture<ObjectNode> result = new CompletableFuture<>();
+        workers.execute(() -> runGuarded(name, op, deadline, result));
+        return result;
+    }
+
+    /**
+     * Error reply of a device which did not answer in time
+     *
+     * @param msg reason
+     * @return reply marked timedOut
+     */
+    public static ObjectNode timeoutReply(String msg) {
+        ObjectNode reply = errorReply(msg);
+        reply.put("timedOut", true);
+        return reply;
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    private void runGuarded(String name, Function<String, ObjectNode> op, long deadline,
+                            CompletableFuture<ObjectNode> result) {
+        Thread worker = Thread.currentThread();
+        Object lock = new Object();
+        boolean[] finished = {false};
+        long timeout = TimeUnit.MILLISECONDS.toNanos(deviceTimeout);
+        String msg = "Timed out after " + deviceTimeout + " ms";
+        if (deadline != 0 && deadline - System.nanoTime() < timeout) {
+            timeout = Math.max(0, deadline - System.nanoTime());
+            msg = DEADLINE_PASSED;
+        }
+        ObjectNode timedOut = timeoutReply(msg);
+
+        ScheduledFuture<?> timer = watchdog.schedule(() -> {
+            synchronized (lock) {
+                if (!finished[0] && result.complete(timedOut)) {
+                    worker.interrupt();
+                }
+            }
+        }, timeout, TimeUnit.NANOSECONDS);
+
+        try {
+            result.complete(op.apply(name));
+        } catch (RuntimeException e) {
+            result.complete(errorReply(e.getMessage()));
+        } finally {
+            timer.cancel(false);
+            synchronized (lock) {
+                finished[0] = true;
+            }
+            // Do not leak a late interrupt into the next task of this worker
+            Thread.interrupted();
+        }
+    }
+
+    private static ObjectNode errorReply(String msg) {
+        ObjectNode reply = mapper.createObjectNode();
+        reply.put("error", true);
+        reply.put("msg", msg == null ? "unknown error" : msg);
+        return reply;
+    }
+}
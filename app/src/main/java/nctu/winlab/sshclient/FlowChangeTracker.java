@@ -0,0 +1,227 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+
+/**
+ * Last known flows and groups of a switch, versioned so that readers can
+ * ask only for what changed
+ *
+ * Every update which adds, removes or modifies an entry bumps the version.
+ * Flows are keyed by table, match criteria and priority, groups by ID.
+ * Several entries may share a key; unchanged entries are paired up first,
+ * and only the rest count as modified, added or removed. A flow only counts
+ * as modified when its actions change, not its counters. Removed entries
+ * are remembered for HISTORY versions; a reader which is further behind
+ * gets the full set instead. Entries added and removed again after the
+ * version a reader has are left out of its changes.
+ */
+public class FlowChangeTracker {
+    public static final int HISTORY = 64;
+
+    private final Map<String, List<Entry>> flows = new HashMap<>();
+    private final Map<String, List<Entry>> groups = new HashMap<>();
+    private long version;
+    private long horizon;
+
+    /**
+     * Record the flows just read from the switch
+     *
+     * @param list flows as parsed by the switch driver
+     */
+    public synchronized void updateFlows(ArrayNode list) {
+        update(flows, list, FlowChangeTracker::flowKey, FlowChangeTracker::sameFlow);
+    }
+
+    /**
+     * Record the groups just read from the switch
+     *
+     * @param list groups as parsed by the switch driver
+     */
+    public synchronized void updateGroups(ArrayNode list) {
+        update(groups, list, node -> node.path("id").asText(), JsonNode::equals);
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Get the changes after a version
+     *
+     * @param since version the reader already has; 0 for none
+     * @return JSON object included fields: version, full, and for flows and
+     *         groups either the full list or lists of added, removed and
+     *         modified entries
+     */
+    public synchronized ObjectNode changesSince(long since) {
+        ObjectNode res = mapper.createObjectNode();
+        boolean full = since < horizon || since > version;
+        res.put("version", version);
+        res.put("full", full);
+        if (full) {
+            res.set("flows", current(flows));
+            res.set("groups", current(groups));
+        } else {
+            res.set("flows", delta(flows, since));
+            res.set("groups", delta(groups, since));
+        }
+        return res;
+    }
+
+    private void update(Map<String, List<Entry>> entries, ArrayNode list,
+                        Function<JsonNode, String> key, BiPredicate<JsonNode, JsonNode> same) {
+        long next = version + 1;
+        boolean changed = false;
+        Map<String, List<JsonNode>> incoming = new LinkedHashMap<>();
+        for (JsonNode node : list) {
+            incoming.computeIfAbsent(key.apply(node), k -> new ArrayList<>()).add(node);
+        }
+        Set<String> keys = new HashSet<>(entries.keySet());
+        keys.addAll(incoming.keySet());
+
+        for (String k : keys) {
+            List<Entry> known = entries.computeIfAbsent(k, x -> new ArrayList<>());
+            List<Entry> free = new ArrayList<>();
+            for (Entry entry : known) {
+                if (!entry.removed) {
+                    free.add(entry);
+                }
+            }
+            // Pair entries which did not change, then treat the rest as
+            // modified as far as they go
+            List<JsonNode> unmatched = new ArrayList<>();
+            for (JsonNode node : incoming.getOrDefault(k, new ArrayList<>())) {
+                Entry match = null;
+                for (Entry entry : free) {
+                    if (same.test(entry.node, node)) {
+                        match = entry;
+                        break;
+                    }
+                }
+                if (match != null) {
+                    match.node = node;
+                    free.remove(match);
+                } else {
+                    unmatched.add(node);
+                }
+            }
+            for (JsonNode node : unmatched) {
+                if (!free.isEmpty()) {
+                    Entry entry = free.remove(0);
+                    entry.node = node;
+                    entry.version = next;
+                } else {
+                    known.add(new Entry(node, next));
+                }
+                changed = true;
+            }
+            for (Entry entry : free) {
+                entry.removed = true;
+                entry.version = next;
+                changed = true;
+            }
+        }
+        if (changed) {
+            version = next;
+            prune();
+        }
+    }
+
+    private void prune() {
+        horizon = Math.max(horizon, version - HISTORY);
+        for (Map<String, List<Entry>> entries : Arrays.asList(flows, groups)) {
+            Iterator<List<Entry>> it = entries.values().iterator();
+            while (it.hasNext()) {
+                List<Entry> known = it.next();
+                known.removeIf(entry -> entry.removed && entry.version <= horizon);
+                if (known.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private ArrayNode current(Map<String, List<Entry>> entries) {
+        ArrayNode list = mapper.createArrayNode();
+        entries.values().forEach(known -> known.stream().filter(entry -> !entry.removed)
+                .forEach(entry -> list.add(entry.node)));
+        return list;
+    }
+
+    private ObjectNode delta(Map<String, List<Entry>> entries, long since) {
+        ObjectNode delta = mapper.createObjectNode();
+        ArrayNode added = delta.putArray("added");
+        ArrayNode removed = delta.putArray("removed");
+        ArrayNode modified = delta.putArray("modified");
+        for (List<Entry> known : entries.values()) {
+            for (Entry entry : known) {
+                if (entry.version <= since) {
+                    continue;
+                }
+                if (entry.removed) {
+                    // Never seen by the reader if it came and went since
+                    if (entry.created <= since) {
+                        removed.add(entry.node);
+                    }
+                } else if (entry.created > since) {
+                    added.add(entry.node);
+                } else {
+                    modified.add(entry.node);
+                }
+            }
+        }
+        return delta;
+    }
+
+    private static String flowKey(JsonNode flow) {
+        return flow.path("type").asText() + "|" + flow.path("matches").toString() + "|" + priority(flow);
+    }
+
+    // Counters live in the status section, so it is left out
+    private static boolean sameFlow(JsonNode a, JsonNode b) {
+        return a.path("type").equals(b.path("type"))
+                && a.path("matches").equals(b.path("matches"))
+                && a.path("actions").equals(b.path("actions"));
+    }
+
+    private static String priority(JsonNode flow) {
+        for (String section : new String[] {"matches", "status", "actions"}) {
+            Iterator<Map.Entry<String, JsonNode>> fields = flow.path(section).fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (field.getKey().equalsIgnoreCase("priority")) {
+                    return field.getValue().asText();
+                }
+            }
+        }
+        return "";
+    }
+
+    private static class Entry {
+        private JsonNode node;
+        private final long created;
+        private long version;
+        private boolean removed;
+
+        private Entry(JsonNode node, long version) {
+            this.node = node;
+            this.created = version;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package nctu.winlab.sshclient;
+
+import java.util.function.BiConsumer;
+
+import static nctu.winlab.sshclient.CliText.digits;
+import static nctu.winlab.sshclient.CliText.isLabelChar;
+import static nctu.winlab.sshclient.CliText.isSpace;
+import static nctu.winlab.sshclient.CliText.isWordChar;
+
+/**
+ * Pairs of a label and a value found in one line of CLI output
+ *
+ * A label is a run of letters and spaces, followed by a colon when one is
+ * required, then whitespace and a value of one of the accepted kinds; e.g.
+ * "Output port: 1/0/3   Dest MAC  00:11:22:33:44:55". Specs are built once
+ * and reused for every line.
+ */
+public final class KeyValueSpec {
+    /**
+     * Kinds of values, tried in the order they are given to a spec
+     */
+    public enum Value {
+        /** The literal NA */
+        NA,
+        /** A MAC address written as six pairs of word characters */
+        MAC,
+        /** Digits, optionally followed by a slash and more digits */
+        PORT,
+        /** Digits */
+        NUMBER
+    }
+
+    private final boolean colonRequired;
+    private final Value[] values;
+
+    private KeyValueSpec(boolean colonRequired, Value[] values) {
+        this.colonRequired = colonRequired;
+        this.values = values;
+    }
+
+    /**
+     * Spec of pairs whose label is followed by a colon
+     *
+     * @param values accepted value kinds
+     * @return spec
+     */
+    public static KeyValueSpec colon(Value... values) {
+        return new KeyValueSpec(true, values);
+    }
+
+    /**
+     * Spec of pairs whose label may be followed by a colon
+     *
+     * @param values accepted value kinds
+     * @return spec
+     */
+    public static KeyValueSpec optionalColon(Value... values) {
+        return new KeyValueSpec(false, values);
+    }
+
+    /**
+     * Find every pair in a line, from left to right
+     *
+     * @param line one line of CLI output
+     * @param action receives the trimmed label and value of each pair
+     */
+    public void forEach(String line, BiConsumer<String, String> action) {
+        int n = line.length();
+        int p = 0;
+        while (p < n) {
+            int start = p;
+            while (start < n && !isLabelChar(line.charAt(start))) {
+                start++;
+            }
+            if (start >= n) {
+                return;
+            }
+            int runEnd = start;
+            while (runEnd < n && isLabelChar(line.charAt(runEnd))) {
+                runEnd++;
+            }
+
+            // Prefer the longest label, as a greedy match would
+            int matchEnd = -1;
+            for (int labelEnd = runEnd; labelEnd > start && matchEnd < 0; labelEnd--) {
+                boolean colon = labelEnd < n && line.charAt(labelEnd) == ':';
+                if (colon) {
+                    matchEnd = pairEnd(line, start, labelEnd, labelEnd + 1, action);
+                }
+                if (matchEnd < 0 && !colonRequired) {
+                    matchEnd = pairEnd(line, start, labelEnd, labelEnd, action);
+                }
+            }
+            p = matchEnd < 0 ? runEnd : matchEnd;
+        }
+    }
+
+    // Match whitespace and a value after a label; returns the end of the
+    // pair after passing it on, or -1
+    private int pairEnd(String line, int start, int labelEnd, int from, BiConsumer<String, String> action) {
+        int valueStart = from;
+        while (valueStart < line.length() && isSpace(line.charAt(valueStart))) {
+            valueStart++;
+        }
+        if (valueStart == from) {
+            return -1;
+        }
+        int valueEnd = value(line, valueStart);
+        if (valueEnd < 0) {
+            return -1;
+        }
+        action.accept(line.substring(start, labelEnd).strip(), line.substring(valueStart, valueEnd).strip());
+        return valueEnd;
+    }
+
+    private int value(String line, int from) {
+        for (Value kind : values) {
+            int end = -1;
+            switch (kind) {
+                case NA:
+                    end = line.startsWith("NA", from) ? from + 2 : -1;
+                    break;
+                case MAC:
+                    end = mac(line, from);
+                    break;
+                case PORT:
+                    end = digits(line, from);
+                    if (end == from) {
+                        end = -1;
+                    } else if (end < line.length() && line.charAt(end) == '/') {
+                        int sub = digits(line, end + 1);
+                        end = sub > end + 1 ? sub : end;
+                    }
+                    break;
+                case NUMBER:
+                    end = digits(line, from);
+                    end = end > from ? end : -1;
+                    break;
+                default:
+                    break;
+            }
+            if (end >= 0) {
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    private static int mac(String line, int from) {
+        if (from + 17 > line.length()) {
+            return -1;
+        }
+        for (int i = 0; i < 17; i++) {
+            char c = line.charAt(from + i);
+            if (i % 3 == 2 ? c != ':' : !isWordChar(c)) {
+                return -1;
+            }
+        }
+        return from + 17;
+    }
+}
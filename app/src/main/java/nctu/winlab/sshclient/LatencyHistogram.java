@@ -0,0 +1,138 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+
+/**
+ * Latency distribution of one kind of operation, with error count
+ *
+ * Latencies are counted in microsecond buckets which are linear below 32us
+ * and split every power of two into 16 sub-buckets above, the layout
+ * HdrHistogram uses; percentiles are off by at most 1/16 of their value.
+ * Recording takes no lock. Latencies above about 71 minutes count as 71
+ * minutes.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 16;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    static final long MAX_MICROS = (1L << 32) - 1;
+    static final int BUCKETS = index(MAX_MICROS) + 1;
+
+    // Slots past the buckets: count, errors, sum and max
+    private static final int COUNT = BUCKETS;
+    private static final int ERRORS = BUCKETS + 1;
+    private static final int SUM = BUCKETS + 2;
+    private static final int MAX = BUCKETS + 3;
+
+    private final AtomicLongArray slots = new AtomicLongArray(BUCKETS + 4);
+
+    /**
+     * Record one operation
+     *
+     * @param nanos how long it took
+     * @param error whether it failed
+     */
+    public void record(long nanos, boolean error) {
+        long micros = Math.min(MAX_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        slots.incrementAndGet(index(micros));
+        slots.incrementAndGet(COUNT);
+        if (error) {
+            slots.incrementAndGet(ERRORS);
+        }
+        slots.addAndGet(SUM, micros);
+        long max;
+        while (micros > (max = slots.get(MAX)) && !slots.compareAndSet(MAX, max, micros)) {
+            // Lost a race with another recorder; retry against the new max
+        }
+    }
+
+    /**
+     * Add the operations recorded by another histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < MAX; i++) {
+            slots.addAndGet(i, other.slots.get(i));
+        }
+        long max;
+        long otherMax = other.slots.get(MAX);
+        while (otherMax > (max = slots.get(MAX)) && !slots.compareAndSet(MAX, max, otherMax)) {
+            // Retry against the new max
+        }
+    }
+
+    public long count() {
+        return slots.get(COUNT);
+    }
+
+    public long errors() {
+        return slots.get(ERRORS);
+    }
+
+    /**
+     * Latency below which a share of the operations completed
+     *
+     * @param percentile share in percent, e.g. 99.9
+     * @return latency in milliseconds; 0 if nothing was recorded
+     */
+    public double percentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = slots.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), slots.get(MAX)) / 1000.0;
+            }
+        }
+        return slots.get(MAX) / 1000.0;
+    }
+
+    /**
+     * Get the statistics of the recorded operations
+     *
+     * @return JSON object included fields: count, errors, p50Ms, p99Ms,
+     *         p999Ms, maxMs and meanMs
+     */
+    public ObjectNode stats() {
+        ObjectNode stats = mapper.createObjectNode();
+        long count = count();
+        stats.put("count", count);
+        stats.put("errors", errors());
+        stats.put("p50Ms", percentile(50));
+        stats.put("p99Ms", percentile(99));
+        stats.put("p999Ms", percentile(99.9));
+        stats.put("maxMs", slots.get(MAX) / 1000.0);
+        stats.put("meanMs", count == 0 ? 0 : slots.get(SUM) / 1000.0 / count);
+        return stats;
+    }
+
+    static int index(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - 4;
+        int sub = (int) (micros >>> shift);
+        return LINEAR + (shift - 1) * SUB_BUCKETS + sub - SUB_BUCKETS;
+    }
+
+    // Largest latency counted in a bucket
+    static long highestValue(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,90 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+
+/**
+ * Latency of driver operations by device and operation
+ *
+ * Only operations which reached a device are recorded; replies served from
+ * the cache or a snapshot are not. Totals by model and over all devices are
+ * summed up when the statistics are read.
+ */
+public class LatencyMetrics {
+    // Totals key of devices recorded without a model
+    static final String UNKNOWN_MODEL = "unknown";
+
+    private final Map<String, Device> devices = new ConcurrentHashMap<>();
+
+    /**
+     * Record one driver operation
+     *
+     * @param device device name
+     * @param model device model
+     * @param operation operation name, e.g. getFlows
+     * @param nanos how long it took
+     * @param error whether it failed
+     */
+    public void record(String device, String model, String operation, long nanos, boolean error) {
+        Device d = devices.computeIfAbsent(device, k -> new Device());
+        d.model = model;
+        d.operations.computeIfAbsent(operation, k -> new LatencyHistogram()).record(nanos, error);
+    }
+
+    /**
+     * Forget every device which is not listed
+     *
+     * @param names devices to keep
+     */
+    public void retain(Collection<String> names) {
+        devices.keySet().retainAll(names);
+    }
+
+    /**
+     * Get the latency statistics
+     *
+     * @return JSON object included fields: operations, the statistics of
+     *         each operation over all devices; models, the same by model;
+     *         and devices, a list of devices with name, model and the
+     *         statistics of their operations
+     */
+    public ObjectNode stats() {
+        Map<String, LatencyHistogram> total = new TreeMap<>();
+        Map<String, Map<String, LatencyHistogram>> byModel = new TreeMap<>();
+        ObjectNode stats = mapper.createObjectNode();
+        ObjectNode operations = stats.putObject("operations");
+        ObjectNode models = stats.putObject("models");
+        ArrayNode deviceList = stats.putArray("devices");
+
+        for (Map.Entry<String, Device> e : new TreeMap<>(devices).entrySet()) {
+            Device d = e.getValue();
+            ObjectNode device = deviceList.addObject();
+            device.put("name", e.getKey());
+            device.put("model", d.model);
+            ObjectNode ops = device.putObject("operations");
+            for (Map.Entry<String, LatencyHistogram> op : new TreeMap<>(d.operations).entrySet()) {
+                ops.set(op.getKey(), op.getValue().stats());
+                total.computeIfAbsent(op.getKey(), k -> new LatencyHistogram()).add(op.getValue());
+                byModel.computeIfAbsent(d.model == null ? UNKNOWN_MODEL : d.model, k -> new TreeMap<>())
+                       .computeIfAbsent(op.getKey(), k -> new LatencyHistogram()).add(op.getValue());
+            }
+        }
+        total.forEach((op, histogram) -> operations.set(op, histogram.stats()));
+        byModel.forEach((model, ops) -> {
+            ObjectNode node = models.putObject(model);
+            ops.forEach((op, histogram) -> node.set(op, histogram.stats()));
+        });
+        return stats;
+    }
+
+    private static class Device {
+        private volatile String model;
+        private final Map<String, LatencyHistogram> operations = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,116 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+
+/**
+ * Time spent in each phase of the device operation run by a thread
+ *
+ * Clients mark the end of a phase as they go; the time since the previous
+ * mark is added to that phase, so an operation sending several commands
+ * sums up the phases of all of them. Marks on a thread without a timer are
+ * ignored, so they cost next to nothing unless timing was asked for.
+ */
+public final class PhaseTimer {
+    public enum Phase {
+        /** Waiting behind earlier requests to the device */
+        QUEUE("queueMs"),
+        /** TCP connection to the device */
+        CONNECT("connectMs"),
+        /** SSH key exchange and authentication */
+        AUTH("authMs"),
+        /** Opening the shell or exec channel */
+        CHANNEL_OPEN("channelOpenMs"),
+        /** Writing the commands */
+        WRITE("writeMs"),
+        /** Waiting for the first byte of the reply */
+        FIRST_BYTE("firstByteMs"),
+        /** Receiving the rest of the reply */
+        LAST_BYTE("lastByteMs"),
+        /** Driver work between and after commands, mostly parsing replies */
+        PARSE("parseMs");
+
+        private final String field;
+
+        Phase(String field) {
+            this.field = field;
+        }
+    }
+
+    private static final ThreadLocal<PhaseTimer> CURRENT = new ThreadLocal<>();
+
+    private final long[] nanos = new long[Phase.values().length];
+    private final long start;
+    private long last;
+
+    private PhaseTimer(long start) {
+        this.start = start;
+        this.last = start;
+    }
+
+    /**
+     * Time the operation about to run on this thread
+     *
+     * @param queued System.nanoTime() at which the operation was queued
+     * @return timer, to be stopped when the operation ends
+     */
+    public static PhaseTimer start(long queued) {
+        PhaseTimer timer = new PhaseTimer(queued);
+        CURRENT.set(timer);
+        mark(Phase.QUEUE);
+        return timer;
+    }
+
+    /**
+     * Mark the end of a phase now
+     */
+    public static void mark(Phase phase) {
+        mark(phase, System.nanoTime());
+    }
+
+    /**
+     * Mark the end of a phase at a time taken earlier, possibly on another
+     * thread
+     *
+     * @param phase phase which ended
+     * @param at System.nanoTime() at which it ended
+     */
+    public static void mark(Phase phase, long at) {
+        PhaseTimer timer = CURRENT.get();
+        if (timer != null && at > timer.last) {
+            timer.nanos[phase.ordinal()] += at - timer.last;
+            timer.last = at;
+        }
+    }
+
+    /**
+     * Stop timing; the time since the last mark counts as parsing
+     */
+    public void stop() {
+        if (CURRENT.get() == this) {
+            mark(Phase.PARSE);
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Stop timing and attach the phases to a reply
+     *
+     * @param reply reply of the operation, left unmodified
+     * @return JSON object with the fields of reply and field timing, holding
+     *         the milliseconds spent in each phase and in total (totalMs)
+     */
+    public ObjectNode attachTo(ObjectNode reply) {
+        stop();
+        ObjectNode timing = mapper.createObjectNode();
+        for (Phase phase : Phase.values()) {
+            timing.put(phase.field, nanos[phase.ordinal()] / 1e6);
+        }
+        timing.put("totalMs", (last - start) / 1e6);
+        ObjectNode timed = mapper.createObjectNode();
+        timed.setAll(reply);
+        timed.set("timing", timing);
+        return timed;
+    }
+}
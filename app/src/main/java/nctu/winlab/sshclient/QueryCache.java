@@ -0,0 +1,153 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+
+/**
+ * Cache of device query replies
+ *
+ * Replies are kept per device and query for a fixed time, and the least
+ * recently used one is dropped once the cache is full; with no time set,
+ * the default, nothing is cached. Changing anything on a device drops all
+ * of its replies; a query which was already running at that moment does
+ * not store its reply, since it may have read the old state. Replies are
+ * shared with every reader and must not be modified.
+ */
+public class QueryCache {
+    public static final long DEFAULT_TTL = 0;
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> generations = new HashMap<>();
+    private long ttl;
+    private int maxEntries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public QueryCache(long ttl, int maxEntries) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Change how long and how many replies are kept
+     *
+     * @param ttl milliseconds a reply stays valid; 0 disables the cache
+     * @param maxEntries maximum number of cached replies
+     */
+    public synchronized void configure(long ttl, int maxEntries) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        if (ttl <= 0) {
+            entries.clear();
+        }
+        trim();
+    }
+
+    /**
+     * Get a cached reply
+     *
+     * @param device device name
+     * @param query query name
+     * @return the reply, or null if none is cached or it expired
+     */
+    public synchronized ObjectNode get(String device, String query) {
+        if (ttl <= 0) {
+            return null;
+        }
+        String key = key(device, query);
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.storedAt <= ttl) {
+            hits++;
+            return entry.reply;
+        }
+        if (entry != null) {
+            entries.remove(key);
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Current generation of a device, to be passed to put by a query which
+     * starts now
+     *
+     * @param device device name
+     * @return generation number
+     */
+    public synchronized long generation(String device) {
+        return generations.getOrDefault(device, 0L);
+    }
+
+    /**
+     * Store a reply unless it is an error or the device changed since the
+     * query started
+     *
+     * @param device device name
+     * @param query query name
+     * @param generation generation of the device when the query started
+     * @param reply reply of the query
+     */
+    public synchronized void put(String device, String query, long generation, ObjectNode reply) {
+        if (ttl <= 0 || reply.path("error").asBoolean(false) || generation != generation(device)) {
+            return;
+        }
+        entries.put(key(device, query), new Entry(reply));
+        trim();
+    }
+
+    /**
+     * Drop every reply of a device
+     *
+     * @param device device name
+     */
+    public synchronized void invalidate(String device) {
+        generations.merge(device, 1L, Long::sum);
+        String prefix = device + "/";
+        entries.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Get hit and miss statistics
+     *
+     * @return JSON object included fields: size, hits, misses, evictions, hitRatio
+     */
+    public synchronized ObjectNode stats() {
+        ObjectNode stats = mapper.createObjectNode();
+        long lookups = hits + misses;
+        stats.put("size", entries.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("hitRatio", lookups == 0 ? 0 : (double) hits / lookups);
+        return stats;
+    }
+
+    private void trim() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static String key(String device, String query) {
+        return device + "/" + query;
+    }
+
+    private static class Entry {
+        private final ObjectNode reply;
+        private final long storedAt = System.currentTimeMillis();
+
+        private Entry(ObjectNode reply) {
+            this.reply = reply;
+        }
+    }
+}
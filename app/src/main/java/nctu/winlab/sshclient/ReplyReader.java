@@ -0,0 +1,90 @@
+package nctu.winlab.sshclient;
+
+import java.io.IOException;
+import java.io.Reader;
+import nctu.winlab.sshclient.PhaseTimer.Phase;
+
+/**
+ * Cuts the replies of main commands out of a shell stream
+ *
+ * Each reply lies between the echo of its command and the end mark sent
+ * after it. Output read past the end mark is kept for the next reply.
+ */
+class ReplyReader {
+    static final String CMD_END_MARK = "# CMD_END #";
+    private static final int RECV_BUF_SIZE = 1024;
+
+    private final StringBuilder pending = new StringBuilder();
+    private final char[] buf = new char[RECV_BUF_SIZE];
+    private String skipped = "";
+
+    /**
+     * Forget output left over from a previous shell
+     */
+    void clear() {
+        pending.setLength(0);
+        skipped = "";
+    }
+
+    /**
+     * Output read before the echo of the main command of the last reply,
+     * i.e. the output of the commands written ahead of it
+     */
+    String skipped() {
+        return skipped;
+    }
+
+    /**
+     * Read until the end mark following a main command
+     *
+     * @param reader shell output
+     * @param mainCmd command whose reply to read
+     * @return output of the command, or null if the stream ended first
+     * @throws IOException if reading fails
+     */
+    String read(Reader reader, String mainCmd) throws IOException {
+        int nbytes;
+        int cmdAt = -1;
+        int markAt = -1;
+        int scanFrom = 0;
+        boolean waiting = true;
+
+        while (true) {
+            // Only the newly arrived tail (plus a pattern length of
+            // overlap) is searched on each round
+            if (cmdAt < 0) {
+                cmdAt = pending.indexOf(mainCmd, scanFrom);
+                scanFrom = cmdAt < 0 ? Math.max(0, pending.length() - mainCmd.length() + 1)
+                                     : cmdAt + mainCmd.length();
+            }
+            if (cmdAt >= 0) {
+                markAt = pending.indexOf(CMD_END_MARK, scanFrom);
+                if (markAt >= 0) {
+                    break;
+                }
+                scanFrom = Math.max(scanFrom, pending.length() - CMD_END_MARK.length() + 1);
+            }
+            if ((nbytes = reader.read(buf, 0, RECV_BUF_SIZE)) < 0) {
+                return null;
+            }
+            if (waiting) {
+                PhaseTimer.mark(Phase.FIRST_BYTE);
+                waiting = false;
+            }
+            pending.append(buf, 0, nbytes);
+        }
+        PhaseTimer.mark(Phase.LAST_BYTE);
+
+        // Skip the rest of the echoed command line and drop the partial
+        // line holding the echoed end mark
+        int begin = pending.indexOf("\n", cmdAt + mainCmd.length()) + 1;
+        if (begin == 0 || begin > markAt) {
+            begin = markAt;
+        }
+        int end = Math.max(begin, pending.lastIndexOf("\n", markAt - 1) + 1);
+        String reply = pending.substring(begin, end);
+        skipped = pending.substring(0, cmdAt);
+        pending.delete(0, markAt + CMD_END_MARK.length());
+        return reply;
+    }
+}
@@ -0,0 +1,62 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+
+/**
+ * Builds and writes replies without copying driver output
+ *
+ * Device replies share the nodes built by the drivers, and replies are
+ * serialized straight onto the output stream instead of into a String
+ * first. Replies must therefore not be modified once they are handed out.
+ */
+public final class ReplyWriter {
+    private ReplyWriter() {
+    }
+
+    /**
+     * Wrap the reply of a device with its name
+     *
+     * @param name device name
+     * @param reply reply of the device
+     * @return JSON object with field name followed by the fields of reply
+     */
+    public static ObjectNode deviceReply(String name, ObjectNode reply) {
+        ObjectNode device = mapper.createObjectNode();
+        device.put("name", name);
+        device.setAll(reply);
+        return device;
+    }
+
+    /**
+     * Serialize a reply onto a stream, leaving the stream open
+     *
+     * @param reply reply to write
+     * @param out target stream
+     * @throws IOException if writing fails
+     */
+    public static void write(JsonNode reply, OutputStream out) throws IOException {
+        JsonGenerator gen = mapper.getFactory().createGenerator(out);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        mapper.writeTree(gen, reply);
+        gen.close();
+    }
+
+    /**
+     * Serialize a reply as one newline-delimited JSON record and flush it
+     *
+     * @param reply reply to write
+     * @param out target stream
+     * @throws IOException if writing fails
+     */
+    public static void writeRecord(JsonNode reply, OutputStream out) throws IOException {
+        write(reply, out);
+        out.write('\n');
+        out.flush();
+    }
+}
@@ -0,0 +1,106 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.function.Consumer;
+
+/**
+ * Per-request settings of SshClientAsyncService operations
+ */
+public final class RequestOptions {
+    public static final RequestOptions DEFAULT = builder().build();
+
+    private final boolean fresh;
+    private final boolean timing;
+    private final long timeout;
+    private final Consumer<ObjectNode> deviceListener;
+
+    private RequestOptions(Builder builder) {
+        this.fresh = builder.fresh;
+        this.timing = builder.timing;
+        this.timeout = builder.timeout;
+        this.deviceListener = builder.deviceListener;
+    }
+
+    /**
+     * Whether queries must be sent to the devices instead of being answered
+     * from polled snapshots or cached replies
+     */
+    public boolean fresh() {
+        return fresh;
+    }
+
+    /**
+     * Whether replies of devices carry the milliseconds spent in each phase
+     * of the operation, in field timing; replies answered from snapshots or
+     * the cache are not timed
+     */
+    public boolean timing() {
+        return timing;
+    }
+
+    /**
+     * Milliseconds the whole request may take, or 0 for no deadline. Devices
+     * which have not answered by then are interrupted and replied with an
+     * error marked timedOut; the others keep their replies.
+     */
+    public long timeout() {
+        return timeout;
+    }
+
+    /**
+     * Callback given the reply of each device, named in field "name", as
+     * soon as the device answers; null if replies are only collected. When
+     * set, the reply of the whole request carries no device entries.
+     */
+    public Consumer<ObjectNode> deviceListener() {
+        return deviceListener;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get a builder initialized with these settings
+     */
+    public Builder toBuilder() {
+        return builder().fresh(fresh).timing(timing).timeout(timeout).deviceListener(deviceListener);
+    }
+
+    public static final class Builder {
+        private boolean fresh;
+        private boolean timing;
+        private long timeout;
+        private Consumer<ObjectNode> deviceListener;
+
+        private Builder() {
+        }
+
+        public Builder fresh(boolean fresh) {
+            this.fresh = fresh;
+            return this;
+        }
+
+        public Builder timing(boolean timing) {
+            this.timing = timing;
+            return this;
+        }
+
+        public Builder timeout(long timeout) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("Timeout should not be negative");
+            }
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder deviceListener(Consumer<ObjectNode> deviceListener) {
+            this.deviceListener = deviceListener;
+            return this;
+        }
+
+        public RequestOptions build() {
+            return new RequestOptions(this);
+        }
+    }
+}
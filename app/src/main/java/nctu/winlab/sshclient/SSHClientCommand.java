@@ -85,12 +85,19 @@ public class SSHClientCommand extends AbstractShellCommand {
             required = false, multiValued = false)
     private String targetName = null;
 
+    @Option(name = "-t", aliases = "--timeout",
+            description = "Milliseconds the operation may take; devices not done by then are reported as timed out.",
+            required = false, multiValued = false)
+    private long timeout = 0;
+
     private final SshClientService service = get(SshClientService.class);
+    private SshClientAsyncService devices;
     private String target = null;
     
     @Override
     protected void doExecute() {
         determineTarget();
+        devices = service.async().withOptions(RequestOptions.builder().timeout(Math.max(0, timeout)).build());
         switch (instruction) {
             case "get":
                 getHandler();
@@ -127,18 +134,36 @@ public class SSHClientCommand extends AbstractShellCommand {
                 printDeviceArray(service.getDevices());
                 break;
             case "controller":
-                output(service.getController(target));
+                output(devices.getController(target).join());
                 break;
             case "flow":
-                output(service.getFlows(target));
+                output(devices.getFlows(target).join());
                 break;
             case "group":
-                output(service.getGroups(target));
+                output(devices.getGroups(target).join());
                 break;
             case "log":
                 String filename = contents.length > 1 ? contents[1] : null;
                 service.getLogs(target, filename);
                 break;
+            case "queue":
+                printQueueStats(service.getQueueStats());
+                break;
+            case "cache":
+                printCacheStats(service.getCacheStats());
+                break;
+            case "breaker":
+                printBreakerStats(service.getBreakerStats());
+                break;
+            case "sessions":
+                printSessionStats(service.getSessionStats());
+                break;
+            case "readiness":
+                printReadiness(service.getReadiness());
+                break;
+            case "metrics":
+                printMetrics(service.getMetrics());
+                break;
             default:
                 System.out.printf("Invalid resource: %s\n", contents[0]);
         }
@@ -154,9 +179,9 @@ public class SSHClientCommand extends AbstractShellCommand {
                 }
                 String port = contents.length > 2 ? contents[2] : "";
                 if (unsetFlag) {
-                    output(service.unsetController(target, ip));
+                    output(devices.unsetController(target, ip).join());
                 } else {
-                    output(service.setController(target, ip, port));
+                    output(devices.setController(target, ip, port).join());
                 }
                 break;
             case "ssid":
@@ -166,7 +191,7 @@ public class SSHClientCommand extends AbstractShellCommand {
                     System.out.println("  sshctl set ssid <ifname> <ssid>");
                     break;
                 }
-                service.setSsid(target, contents[1], contents[2]);
+                output(devices.setSsid(target, contents[1], contents[2]).join());
                 break;
             default:
                 System.out.printf("Invalid resource: %s\n", contents[0]);
@@ -176,9 +201,9 @@ public class SSHClientCommand extends AbstractShellCommand {
     private void execHandler() {
         String cmd = String.join(" ", contents);
         if (contents[0].equals("sudo"))
-            output(service.execSudoCommand(target, cmd));
+            output(devices.execSudoCommand(target, cmd).join());
         else
-            output(service.execCommand(target, cmd));
+            output(devices.execCommand(target, cmd).join());
     }
 
     private void vxlanHandler() {
@@ -189,19 +214,19 @@ public class SSHClientCommand extends AbstractShellCommand {
                 return;
             }
             if (contents[1].equals("loopback"))
-                output(service.setVxlanSourceInterfaceLoopback(target, loopbackId));
+                output(devices.setVxlanSourceInterfaceLoopback(target, loopbackId).join());
             else if (contents[1].equals("vtep"))
-                output(service.setVxlanVtep(target, vnid, vtepIP, mac));
+                output(devices.setVxlanVtep(target, vnid, vtepIP, mac).join());
             else if (contents[1].equals("vlan"))
-                output(service.setVxlanVlan(target, vnid, vid));
+                output(devices.setVxlanVlan(target, vnid, vid).join());
             else {
                 System.out.println("Usage:");
                 System.out.println("  sshctl [OPTIONS] vxlan set { loopback | vtep | vlan }");
             }
         } else if (contents[0].equals("enable") || contents[0].equals("disable")) {
-            output(service.setVxlanStatus(target, contents[0].startsWith("e")));
+            output(devices.setVxlanStatus(target, contents[0].startsWith("e")).join());
         } else if (contents[0].equals("show")) {
-            output(service.showVxlan(target));
+            output(devices.showVxlan(target).join());
         } else {
             System.out.printf("Invalid VXLAN command: %s\n", contents[1]);
         }
@@ -230,6 +255,83 @@ public class SSHClientCommand extends AbstractShellCommand {
         }
     }
 
+    private void printQueueStats(ArrayNode queues) {
+        String fmt = "%-" + (service.getWidth()[0] + 8) + "s%-8s%-10s%-12s%-14s%s\n";
+
+        System.out.printf(fmt, "Name", "Depth", "Running", "Completed", "Avg wait(ms)", "Max wait(ms)");
+        for (JsonNode queue : queues) {
+            System.out.printf(fmt, queue.get("name").asText(),
+                                   queue.get("depth").asText(),
+                                   queue.get("running").asText(),
+                                   queue.get("completed").asText(),
+                                   String.format("%.2f", queue.get("avgWaitMs").asDouble()),
+                                   String.format("%.2f", queue.get("maxWaitMs").asDouble()));
+        }
+    }
+
+    private void printCacheStats(ObjectNode stats) {
+        System.out.printf("Entries: %s\n", stats.get("size").asText());
+        System.out.printf("Hits: %s\n", stats.get("hits").asText());
+        System.out.printf("Misses: %s\n", stats.get("misses").asText());
+        System.out.printf("Evictions: %s\n", stats.get("evictions").asText());
+        System.out.printf("Hit ratio: %.2f\n", stats.get("hitRatio").asDouble());
+    }
+
+    private void printBreakerStats(ArrayNode devices) {
+        String fmt = "%-" + (service.getWidth()[0] + 8) + "s%-8s%-10s%-7s%s\n";
+
+        System.out.printf(fmt, "Name", "State", "Failures", "Trips", "Last error");
+        for (JsonNode device : devices) {
+            System.out.printf(fmt, device.get("name").asText(),
+                                   device.get("state").asText(),
+                                   device.get("failures").asText(),
+                                   device.get("trips").asText(),
+                                   device.get("lastError").asText());
+        }
+    }
+
+    private void printSessionStats(ObjectNode stats) {
+        System.out.printf("Open: %s of %s\n", stats.get("open").asText(), stats.get("maxSessions").asText());
+        System.out.printf("In use: %s\n", stats.get("inUse").asText());
+        System.out.printf("Opened: %s\n", stats.get("opened").asText());
+        System.out.printf("Evicted: %s\n", stats.get("evicted").asText());
+        System.out.printf("Closed when idle: %s\n", stats.get("idleClosed").asText());
+        System.out.printf("Rejected: %s\n", stats.get("rejected").asText());
+    }
+
+    private void printReadiness(ArrayNode devices) {
+        String fmt = "%-" + (service.getWidth()[0] + 8) + "s%-11s%-14s%s\n";
+
+        System.out.printf(fmt, "Name", "State", "Connect(ms)", "Message");
+        for (JsonNode device : devices) {
+            System.out.printf(fmt, device.get("name").asText(),
+                                   device.get("state").asText(),
+                                   String.format("%.2f", device.get("connectMs").asDouble()),
+                                   device.get("msg").asText());
+        }
+    }
+
+    private void printMetrics(ObjectNode metrics) {
+        String fmt = "%-" + (service.getWidth()[0] + 8) + "s%-32s%-8s%-8s%-10s%-10s%-10s%s\n";
+
+        System.out.printf(fmt, "Name", "Operation", "Count", "Errors", "p50(ms)", "p99(ms)", "p999(ms)", "Max(ms)");
+        metrics.get("operations").fields().forEachRemaining(op -> printLatency(fmt, "ALL", op.getKey(), op.getValue()));
+        for (JsonNode device : metrics.get("devices")) {
+            String name = device.get("name").asText();
+            device.get("operations").fields().forEachRemaining(op -> printLatency(fmt, name, op.getKey(), op.getValue()));
+        }
+    }
+
+    private void printLatency(String fmt, String name, String operation, JsonNode stats) {
+        System.out.printf(fmt, name, operation,
+                               stats.get("count").asText(),
+                               stats.get("errors").asText(),
+                               String.format("%.2f", stats.get("p50Ms").asDouble()),
+                               String.format("%.2f", stats.get("p99Ms").asDouble()),
+                               String.format("%.2f", stats.get("p999Ms").asDouble()),
+                               String.format("%.2f", stats.get("maxMs").asDouble()));
+    }
+
     private void output(ObjectNode res) {
         if (res.path("error").asBoolean(false)) {
             System.out.printf("Error: %s", res.path("msg").asText("unknown error"));
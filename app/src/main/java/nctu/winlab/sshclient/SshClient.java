@@ -4,11 +4,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.jcraft.jsch.Channel;
 import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SocketFactory;
+import nctu.winlab.sshclient.PhaseTimer.Phase;
+import nctu.winlab.sshclient.SshSessionPool.Lease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static nctu.winlab.sshclient.SSHConstants.mapper;
 
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 
 public abstract class SshClient {
     public String ip;
@@ -19,9 +31,15 @@ public abstract class SshClient {
     protected Session session;
     protected Channel channel;
     protected BufferedReader reader;
+    protected SshSessionPool sessionPool;
+    // A shell serves one request at a time; subclasses may allow more
+    protected final DeviceCommandQueue commandQueue = new DeviceCommandQueue(1);
+    protected final CircuitBreaker breaker = new CircuitBreaker();
     protected final JSch jsch = new JSch();
+    private final Logger log = LoggerFactory.getLogger(getClass());
     protected static final int TIMEOUT = 3000;
     protected static final int RECV_BUF_SIZE = 1024;
+    private static final SocketFactory SOCKETS = new TimedSocketFactory();
 
     protected SshClient(String ip, String port, String username, String password) {
         this.ip = ip;
@@ -30,6 +48,125 @@ public abstract class SshClient {
         this.password = password;
     }
 
+    /**
+     * Share sessions through a pool instead of connecting on demand
+     *
+     * @param sessionPool session pool; null to manage the session locally
+     */
+    public void setSessionPool(SshSessionPool sessionPool) {
+        this.sessionPool = sessionPool;
+    }
+
+    /**
+     * Queue through which requests to this device are serialized
+     */
+    public DeviceCommandQueue commandQueue() {
+        return commandQueue;
+    }
+
+    /**
+     * Breaker fed with the outcome of every connection and command
+     */
+    public CircuitBreaker breaker() {
+        return breaker;
+    }
+
+    /**
+     * Key identifying the remote endpoint of this client
+     */
+    public String endpoint() {
+        return username + "@" + ip + ":" + port;
+    }
+
+    /**
+     * Whether this client was built from the given device settings
+     */
+    public boolean isConfiguredAs(String ip, String port, String username, String password, String model) {
+        return this.ip.equals(ip) && this.port.equals(port) && this.username.equals(username)
+                && this.password.equals(password) && this.model.equals(model);
+    }
+
+    /**
+     * Establish a new SSH session to the device; a failed connection or
+     * login counts against the breaker
+     */
+    protected Session openSession() throws JSchException {
+        try {
+            Session s = jsch.getSession(username, ip, Integer.parseInt(port));
+            s.setPassword(password);
+            s.setConfig("StrictHostKeyChecking", "no");
+            s.setSocketFactory(SOCKETS);
+            s.connect(TIMEOUT);
+            PhaseTimer.mark(Phase.AUTH);
+            return s;
+        }
+        catch (JSchException e) {
+            if (interrupted(e)) {
+                // The caller gave up, e.g. at its deadline, which says
+                // nothing about the device
+                log.debug("Interrupted connecting to {}:{}", ip, port);
+                throw e;
+            }
+            breaker.failure(e.getMessage());
+            log.warn("Failed to connect to {}:{}", ip, port, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Whether an operation failed because its thread was interrupted
+     */
+    protected static boolean interrupted(Exception e) {
+        return Thread.currentThread().isInterrupted() || e.getCause() instanceof InterruptedException
+                || e.getCause() instanceof InterruptedIOException;
+    }
+
+    /**
+     * Get a connected session; the lease must be handed to releaseSession
+     */
+    protected Lease acquireSession() throws JSchException {
+        // Only openSession counts failures against the breaker; a full pool
+        // or an interrupted wait for a slot is not the device's fault
+        if (sessionPool != null) {
+            return sessionPool.acquire(this);
+        }
+        synchronized (this) {
+            if (session == null || !session.isConnected()) {
+                session = openSession();
+            }
+            return Lease.unpooled(session);
+        }
+    }
+
+    /**
+     * Connect ahead of the first request, so it does not pay for the
+     * handshake
+     */
+    public void warmUp() throws Exception {
+        releaseSession(acquireSession());
+    }
+
+    protected void releaseSession(Lease lease) {
+        if (sessionPool != null && lease != null) {
+            sessionPool.release(lease);
+        }
+    }
+
+    /**
+     * Disconnect from the device once the client is no longer used
+     */
+    public void close() {
+        if (sessionPool != null) {
+            sessionPool.invalidate(this);
+        }
+        synchronized (this) {
+            if (sessionPool == null && session != null) {
+                session.disconnect();
+            }
+            session = null;
+        }
+    }
+
     protected ObjectMapper mapper() {
         return mapper;
     }
@@ -41,4 +178,33 @@ public abstract class SshClient {
         reply.put("raw", "");
         return reply;
     }
+
+    /**
+     * Opens session sockets itself, so the TCP connection can be timed
+     * apart from the SSH handshake
+     */
+    private static class TimedSocketFactory implements SocketFactory {
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), TIMEOUT);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            PhaseTimer.mark(Phase.CONNECT);
+            return socket;
+        }
+
+        @Override
+        public InputStream getInputStream(Socket socket) throws IOException {
+            return socket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream(Socket socket) throws IOException {
+            return socket.getOutputStream();
+        }
+    }
 }
@@ -0,0 +1,176 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of SshClientService
+ *
+ * Every operation returns at once; the future completes with the same JSON
+ * reply the blocking call would return once all target devices answered or
+ * missed their deadline. Futures are completed on SSH worker threads, so
+ * dependent stages should not block.
+ */
+public interface SshClientAsyncService {
+    /**
+     * Get a view of this service which runs operations with other settings
+     *
+     * @param options request settings
+     * @return asynchronous service using the given settings
+     */
+    public SshClientAsyncService withOptions(RequestOptions options);
+    /**
+     * Get controllers of a switch or all switches
+     *
+     * @param deviceID switch name; if given "ALL", then represent all switches
+     * @return future of JSON object included fields: error, msg, array list of controllers
+     */
+    public CompletableFuture<ObjectNode> getController(String deviceID);
+    /**
+     * Set controller of a switch or all switches
+     *
+     * @param deviceID switch name; if given "ALL", then represent all switches
+     * @param ip IPv4 address of controller
+     * @param port port of controller
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> setController(String deviceID, String ip, String port);
+    /**
+     * Remove controller from switch
+     *
+     * @param deviceID switch name; if given "ALL", then represent all switches
+     * @param ip IPv4 address of controller
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> unsetController(String deviceID, String ip);
+    /**
+     * Get installed flow rules of switch
+     *
+     * @param deviceID switch name; if given "ALL", then represent all switches
+     * @return future of JSON object included fields: error, msg, array list of flow rules
+     */
+    public CompletableFuture<ObjectNode> getFlows(String deviceID);
+    /**
+     * Get installed groups of switch
+     *
+     * @param deviceID switch name; if given "ALL", then represent all switches
+     * @return future of JSON object included fields: error, msg, array list of groups
+     */
+    public CompletableFuture<ObjectNode> getGroups(String deviceID);
+    /**
+     * Get changes of installed flow rules and groups of switch
+     *
+     * @param deviceID switch name; if given "ALL", then represent all switches
+     * @param since version of flows and groups the caller already has; 0 for none
+     * @return future of JSON object included fields: error, msg, array list of device version
+     *         and added, removed and modified flows and groups, or the full
+     *         lists if the version is too old
+     */
+    public CompletableFuture<ObjectNode> getFlowChanges(String deviceID, long since);
+    /**
+     * Write system log of switch into a file
+     *
+     * @param deviceID switch name; if given "ALL", then represent all switches
+     * @param filename target filename; print to screen if no filename is specified
+     * @return future of JSON object included fields: error, msg, array list of device msg,
+     *         completed once the file is written and closed
+     */
+    public CompletableFuture<ObjectNode> getLogs(String deviceID, String filename);
+    /**
+     * Execute non-priviledged command on server
+     *
+     * @param deviceID server name; if given "ALL", then represent all servers
+     * @param cmd command for execution
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> execCommand(String deviceID, String cmd);
+    /**
+     * Execute priviledged command on server
+     *
+     * @param deviceID server name; if given "ALL", then represent all servers
+     * @param cmd command for execution
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> execSudoCommand(String deviceID, String cmd);
+    /**
+     * Set SSID of an AP
+     *
+     * @param deviceID AP name; if given "ALL", then represent all APs
+     * @param ifname interface name
+     * @param ssid SSID
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> setSsid(String deviceID, String ifname, String ssid);
+    /**
+     * Set VXLAN source loopback interface ID
+     *
+     * @param deviceID switch name; if given "ALL", then represent all VXLAN supported switches
+     * @param loopbackId loopback ID
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> setVxlanSourceInterfaceLoopback(String deviceID, String loopbackId);
+    /**
+     * Binding VLAN ID to VXLAN VNI
+     *
+     * @param deviceID switch name; if given "ALL", then represent all VXLAN supported switches
+     * @param vnid VXLAN Network Identifier (VNI)
+     * @param vid VLAN ID (VID)
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> setVxlanVlan(String deviceID, String vnid, String vid);
+    /**
+     * Set VTEP IP and MAC for a specified VNI
+     *
+     * @param deviceID switch name; if given "ALL", then represent all VXLAN supported switches
+     * @param vnid VXLAN Network Identifier (VNI)
+     * @param ip IPv4 address of VTEP
+     * @param mac MAC address of VTEP
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> setVxlanVtep(String deviceID, String vnid, String ip, String mac);
+    /**
+     * Turn on/off VXLAN functionality
+     *
+     * @param deviceID switch name; if given "ALL", then represent all VXLAN supported switches
+     * @param flag true for on; otherwise, off
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> setVxlanStatus(String deviceID, boolean flag);
+    /**
+     * Show VXLAN setting of switch
+     *
+     * @param deviceID switch name; if given "ALL", then represent all VXLAN supported switches
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> showVxlan(String deviceID);
+    /**
+     * Show VXLAN tenant systems attached to local ports of switch
+     *
+     * @param deviceID switch name; if given "ALL", then represent all VXLAN supported switches
+     * @return future of JSON object included fields: error, msg, array list of device hosts
+     */
+    public CompletableFuture<ObjectNode> showVxlanTenantSystemLocal(String deviceID);
+    /**
+     * Show VXLAN tenant systems learned from remote VTEPs
+     *
+     * @param deviceID switch name; if given "ALL", then represent all VXLAN supported switches
+     * @return future of JSON object included fields: error, msg, array list of device hosts
+     */
+    public CompletableFuture<ObjectNode> showVxlanTenantSystemRemote(String deviceID);
+    /**
+     * Show VLANs of switch
+     *
+     * @param deviceID switch name; if given "ALL", then represent all VLAN supported switches
+     * @return future of JSON object included fields: error, msg, array list of device vlans
+     */
+    public CompletableFuture<ObjectNode> showVlan(String deviceID);
+    /**
+     * Apply several setter operations on a switch in a single round trip
+     *
+     * @param deviceID switch name; if given "ALL", then represent all switches
+     * @param operations list of operations, each naming the setter in field "op"
+     * @return future of JSON object included fields: error, msg, array list of device msg
+     */
+    public CompletableFuture<ObjectNode> batch(String deviceID, ArrayNode operations);
+}
@@ -1,6 +1,8 @@
 package nctu.winlab.sshclient;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
@@ -18,15 +20,148 @@ public class SshClientConfig extends Config<ApplicationId> {
     private static final String USERNAME = "username";
     private static final String PASSWORD = "password";
     private static final String MODEL = "model";
+    private static final String PARALLELISM = "parallelism";
+    private static final String DEVICE_TIMEOUT = "deviceTimeout";
+    private static final String KEEPALIVE_INTERVAL = "keepaliveInterval";
+    private static final String HEALTH_CHECK_INTERVAL = "healthCheckInterval";
+    private static final String IDLE_TIMEOUT = "idleTimeout";
+    private static final String MAX_SESSIONS = "maxSessions";
+    private static final String MAX_EXEC_CHANNELS = "maxExecChannels";
+    private static final String CACHE_TTL = "cacheTtl";
+    private static final String CACHE_SIZE = "cacheSize";
+    private static final String POLL_INTERVAL = "pollInterval";
+    private static final String POLL_JITTER = "pollJitter";
+    private static final String BREAKER_THRESHOLD = "breakerThreshold";
+    private static final String BREAKER_PROBE_INTERVAL = "breakerProbeInterval";
+    private static final String WARM_UP = "warmUp";
+    private static final String WARM_UP_PARALLELISM = "warmUpParallelism";
 
     public boolean isValid() {
         return hasField(CLIENT_INFOS);
     }
+    /**
+     * Number of devices operated on at the same time by "ALL" operations
+     */
+    public int parallelism() {
+        return get(PARALLELISM, FanOutExecutor.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Time in milliseconds a single device operation may take
+     */
+    public long deviceTimeout() {
+        return get(DEVICE_TIMEOUT, FanOutExecutor.DEFAULT_DEVICE_TIMEOUT);
+    }
+
+    /**
+     * Milliseconds between keepalives on an idle SSH session
+     */
+    public long keepaliveInterval() {
+        return get(KEEPALIVE_INTERVAL, SshSessionPool.DEFAULT_KEEPALIVE_INTERVAL);
+    }
+
+    /**
+     * Milliseconds between health checks of pooled SSH sessions
+     */
+    public long healthCheckInterval() {
+        return get(HEALTH_CHECK_INTERVAL, SshSessionPool.DEFAULT_HEALTH_CHECK_INTERVAL);
+    }
+
+    /**
+     * Milliseconds an SSH session may stay unused before it is closed
+     */
+    public long idleTimeout() {
+        return get(IDLE_TIMEOUT, SshSessionPool.DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Number of SSH sessions open at the same time over all devices
+     */
+    public int maxSessions() {
+        return get(MAX_SESSIONS, SshSessionPool.DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * Number of commands a server may run at the same time over its session
+     */
+    public int maxExecChannels() {
+        return get(MAX_EXEC_CHANNELS, SshExecClient.DEFAULT_MAX_CHANNELS);
+    }
+
+    /**
+     * Milliseconds a switch query reply is answered from the cache; 0, the
+     * default, disables it
+     */
+    public long cacheTtl() {
+        return get(CACHE_TTL, QueryCache.DEFAULT_TTL);
+    }
+
+    /**
+     * Maximum number of query replies kept in the cache
+     */
+    public int cacheSize() {
+        return get(CACHE_SIZE, QueryCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Milliseconds between background polls of a switch; 0, the default,
+     * disables polling
+     */
+    public long pollInterval() {
+        return get(POLL_INTERVAL, StatePoller.DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Fraction of the poll interval by which each poll is randomly shifted
+     */
+    public double pollJitter() {
+        return get(POLL_JITTER, StatePoller.DEFAULT_JITTER);
+    }
+
+    /**
+     * Consecutive failures after which requests to a device fail at once;
+     * 0 disables the circuit breaker
+     */
+    public int breakerThreshold() {
+        return get(BREAKER_THRESHOLD, CircuitBreaker.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Milliseconds between reconnect attempts to a device whose breaker is open
+     */
+    public long breakerProbeInterval() {
+        return get(BREAKER_PROBE_INTERVAL, CircuitBreaker.DEFAULT_PROBE_INTERVAL);
+    }
+
+    /**
+     * Whether to connect to every device as soon as the config is loaded
+     */
+    public boolean warmUp() {
+        return get(WARM_UP, false);
+    }
+
+    /**
+     * Number of devices connected at the same time while warming up
+     */
+    public int warmUpParallelism() {
+        return get(WARM_UP_PARALLELISM, WarmUp.DEFAULT_PARALLELISM);
+    }
+
     public JsonNode clientInfo() {
         return this.node.get(CLIENT_INFOS);
     }
 
     public void parseConfig() {
+        parseConfig(Collections.emptyMap());
+    }
+
+    /**
+     * Build the clients of the configured devices; a device configured as
+     * before keeps its previous client, and with it its live session
+     *
+     * @param previous clients by device name of the config loaded before
+     */
+    public void parseConfig(Map<String, SshClient> previous) {
         clients = new HashMap<>();
         idToname = new HashMap<>();
         int index = 0;
@@ -42,7 +177,13 @@ public class SshClientConfig extends Config<ApplicationId> {
             maxWidth[2] = maxWidth[2] > port.length() ? maxWidth[2] : port.length();
             maxWidth[3] = maxWidth[3] > username.length() ? maxWidth[3] : username.length();
             maxWidth[4] = maxWidth[4] > model.length() ? maxWidth[4] : model.length();
-            SshClient client = null;
+            SshClient client = previous.get(name);
+            if (client != null && client.isConfiguredAs(ip, port, username, password, model)) {
+                clients.put(name, client);
+                idToname.put(index++, name);
+                continue;
+            }
+            client = null;
             switch (SshClientManager.DeviceModel.valueOf(model)) {
                 case DXS_5000: {
                     client = new DXS5000Client(ip, port, username, password, model);
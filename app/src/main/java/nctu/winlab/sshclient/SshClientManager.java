@@ -5,9 +5,22 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableSet;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
 import org.onosproject.net.config.ConfigFactory;
@@ -23,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static nctu.winlab.sshclient.SSHConstants.mapper;
+import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.net.config.NetworkConfigEvent.Type.CONFIG_ADDED;
 import static org.onosproject.net.config.NetworkConfigEvent.Type.CONFIG_UPDATED;
 import static org.onosproject.net.config.basics.SubjectFactories.APP_SUBJECT_FACTORY;
@@ -43,9 +57,31 @@ public class SshClientManager implements SshClientService {
         }
     );
     
-    private HashMap<String, SshClient> clients;
-    private HashMap<Integer, String> idToname;
-    private int[] width;
+    private static final RequestOptions POLL_OPTIONS = RequestOptions.builder().fresh(true).build();
+    // Milliseconds between looks for open circuit breakers due for a probe
+    private static final long PROBE_CHECK_INTERVAL = 1000;
+    // Poll intervals a snapshot stays valid for
+    private static final int SNAPSHOT_POLLS = 3;
+
+    // Devices of the loaded config; replaced as a whole on reload, so a
+    // request never sees a mix of two configs
+    private volatile Inventory inventory = new Inventory(new HashMap<>(), new HashMap<>(), new int[5]);
+    private final FanOutExecutor fanOut = new FanOutExecutor(FanOutExecutor.DEFAULT_PARALLELISM,
+                                                             FanOutExecutor.DEFAULT_DEVICE_TIMEOUT);
+    private final SshSessionPool sessionPool = new SshSessionPool();
+    private final QueryCache cache = new QueryCache(QueryCache.DEFAULT_TTL, QueryCache.DEFAULT_MAX_ENTRIES);
+    // Replies of background polls; kept for a few poll intervals so a device
+    // which stops answering is not reported from an old snapshot for long.
+    // Like polling, off until a config sets the poll interval.
+    private final QueryCache snapshots = new QueryCache(StatePoller.DEFAULT_INTERVAL * SNAPSHOT_POLLS,
+                                                        Integer.MAX_VALUE);
+    private final StatePoller poller = new StatePoller(this::poll);
+    private final WarmUp warmUp = new WarmUp();
+    private final ScheduledExecutorService prober =
+            Executors.newSingleThreadScheduledExecutor(groupedThreads("sshclient", "breaker-prober"));
+    private final LatencyMetrics metrics = new LatencyMetrics();
+    private final Map<String, FlowChangeTracker> trackers = new ConcurrentHashMap<>();
+    private final SshClientAsyncService async = new AsyncManager(RequestOptions.DEFAULT);
     private ApplicationId appId;
 
     @Reference(cardinality=ReferenceCardinality.MANDATORY)
@@ -58,6 +94,8 @@ public class SshClientManager implements SshClientService {
         appId = coreService.registerApplication("nctu.winlab.sshclient");
         cfgService.addListener(cfgListener);
         factories.forEach((cfgService)::registerConfigFactory);
+        prober.scheduleWithFixedDelay(this::probeOpenBreakers, PROBE_CHECK_INTERVAL, PROBE_CHECK_INTERVAL,
+                                      TimeUnit.MILLISECONDS);
         log.info("Started");
     }
 
@@ -65,15 +103,21 @@ public class SshClientManager implements SshClientService {
     protected void deactivate() {
         cfgService.removeListener(cfgListener);
         factories.forEach((cfgService)::unregisterConfigFactory);
+        poller.shutdown();
+        prober.shutdownNow();
+        warmUp.cancel();
+        fanOut.shutdown();
+        sessionPool.shutdown();
         log.info("Stopped");
     }
 
     @Override
     public ArrayNode getDevices() {
         ArrayNode node = mapper.createArrayNode();
-        for (Integer id : idToname.keySet()) {
-            String cname = idToname.get(id);
-            SshClient client = clients.get(cname);
+        Inventory devices = inventory;
+        for (Integer id : devices.idToname.keySet()) {
+            String cname = devices.idToname.get(id);
+            SshClient client = devices.clients.get(cname);
             ObjectNode device = mapper.createObjectNode();
             device.put("index", id);
             device.put("name", cname);
@@ -88,321 +132,453 @@ public class SshClientManager implements SshClientService {
 
     @Override
     public ObjectNode getController(String deviceID) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = createGeneralReply();
-        SshClient client;
-        ArrayNode devices = reply.putArray("devices");
-
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isSwitchClient(client = clients.get(cname)))
-                    addDeviceReply(cname, ((SwitchClient) client).getController(), devices);
-            }
-        } else if (isSwitchClient(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((SwitchClient) client).getController(), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be switch");
-        }
-        return reply;
+        return async.getController(deviceID).join();
     }
 
     @Override
     public ObjectNode setController(String deviceID, String ip, String port) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = createGeneralReply();
-        ArrayNode devices = reply.putArray("devices");
-        SshClient client;
-
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isSwitchClient(client = clients.get(cname)))
-                    addDeviceReply(cname, ((SwitchClient) client).setController(ip, port), devices);
-            }
-        } else if (isSwitchClient(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((SwitchClient) client).setController(ip, port), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be switch");
-        }
-        return reply;
+        return async.setController(deviceID, ip, port).join();
     }
 
     @Override
     public ObjectNode unsetController(String deviceID, String ip) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = mapper.createObjectNode();
-        ArrayNode devices = reply.putArray("devices");
-        SshClient client;
-
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                client = clients.get(cname);
-                if (isSwitchClient(client = clients.get(cname)))
-                    addDeviceReply(cname, ((SwitchClient) client).unsetController(ip), devices);
-            }
-        } else if (isSwitchClient(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((SwitchClient) client).unsetController(ip), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be switch");
-        }
-        return reply;
+        return async.unsetController(deviceID, ip).join();
     }
 
     @Override
     public ObjectNode getFlows(String deviceID) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = createGeneralReply();
-        ArrayNode devices = reply.putArray("devices");
-        SshClient client;
-
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isSwitchClient(client = clients.get(cname)))
-                    addDeviceReply(cname, ((SwitchClient) client).getFlows(), devices);
-            }
-        } else if (isSwitchClient(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((SwitchClient) client).getFlows(), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be switch");
-        }
-        return reply;
+        return async.getFlows(deviceID).join();
     }
 
     @Override
     public ObjectNode getGroups(String deviceID) {
+        return async.getGroups(deviceID).join();
+    }
+
+    @Override
+    public void getLogs(String deviceID, String filename) {
+        ObjectNode reply = async.getLogs(deviceID, filename).join();
+        if (reply.path("error").asBoolean(false)) {
+            log.info(reply.path("msg").asText());
+        }
+    }
+
+    /**
+     * Write the logs of a switch or all switches, one switch after the other
+     */
+    private CompletableFuture<ObjectNode> writeLogs(String deviceID, String filename) {
         String deviceName = convert2name(deviceID);
         ObjectNode reply = createGeneralReply();
         ArrayNode devices = reply.putArray("devices");
-        SshClient client;
-
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isSwitchClient(client = clients.get(cname)))
-                    addDeviceReply(cname, ((SwitchClient) client).getGroups(), devices);
-            }
-        } else if (isSwitchClient(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((SwitchClient) client).getGroups(), devices);
+        Inventory inventory = this.inventory;
+        Map<String, SshClient> clients = inventory.clients;
+        List<String> targets;
+        if (ALL_CLIENTS_OPERATION_INDEX.equals(deviceName)) {
+            targets = inventory.order.stream()
+                    .filter(name -> isSwitchClient(clients.get(name)))
+                    .collect(Collectors.toList());
+        } else if (isSwitchClient(clients.get(deviceName))) {
+            targets = Collections.singletonList(deviceName);
         } else {
             reply.put("error", true);
             reply.put("msg", "Remote machine should be switch");
+            return CompletableFuture.completedFuture(reply);
         }
-        return reply;
-    }
 
-    @Override
-    public void getLogs(String deviceID, String filename) {
-        String deviceName = convert2name(deviceID);
-        SshClient client;
+        FileWriter writer;
         try {
-            FileWriter writer = filename != null ? new FileWriter(filename) : null;
-            
-            if (deviceName.equals("ALL")) {
-                clients.values().forEach(c -> {
-                    if (isSwitchClient(c)) {
-                        ((SwitchClient) c).getLogs(writer);
-                    }
-                });
-            } else if (isSwitchClient(client = clients.get(deviceName))) {
-                ((SwitchClient) client).getLogs(writer);
-            } else {
-                log.info("Remote machine should be switch");
-            }
+            writer = filename != null ? new FileWriter(filename) : null;
+        } catch (IOException e) {
+            reply.put("error", true);
+            reply.put("msg", "Opening " + filename + " failed: " + e.getMessage());
+            return CompletableFuture.completedFuture(reply);
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        // Logs of all switches share one writer, so each switch is queued
+        // only once the previous one is done
+        CompletableFuture<Void> done = CompletableFuture.completedFuture(null);
+        for (String name : targets) {
+            done = done.thenCompose(v -> collectLogs(name, clients.get(name), writer))
+                    .thenAccept(res -> addDeviceReply(name, res, devices));
         }
+        return done.handle((v, ex) -> {
+            if (ex != null) {
+                log.warn("Collecting logs failed: {}", ex.getMessage());
+                reply.put("error", true);
+                reply.put("msg", String.valueOf(ex.getMessage()));
+            }
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    log.warn("Closing {} failed: {}", filename, e.getMessage());
+                }
+            }
+            return reply;
+        });
+    }
+
+    /**
+     * Write the logs of a switch, queued behind the other requests of the
+     * switch like any operation
+     */
+    private CompletableFuture<ObjectNode> collectLogs(String name, SshClient client, FileWriter writer) {
+        CircuitBreaker breaker = client.breaker();
+        if (breaker.isOpen()) {
+            log.warn("Skipping logs of {}: {}", name, breaker.refusal());
+            ObjectNode refused = createGeneralReply();
+            refused.put("error", true);
+            refused.put("msg", breaker.refusal());
+            return CompletableFuture.completedFuture(refused);
+        }
+        return client.commandQueue().submit(release -> fanOut.submit(name, n -> {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                ((SwitchClient) client).getLogs(writer);
+                failed = false;
+                return createGeneralReply();
+            } finally {
+                metrics.record(name, client.model, "getLogs", System.nanoTime() - start, failed);
+                release.run();
+            }
+        })).thenApply(reply -> {
+            if (reply.path("error").asBoolean(false)) {
+                log.warn("Collecting logs of {} failed: {}", name, reply.path("msg").asText());
+            }
+            return reply;
+        });
     }
 
     @Override
     public ObjectNode execCommand(String deviceID, String cmd) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = createGeneralReply();
-        ArrayNode devices = reply.putArray("devices");
-        SshClient client;
-
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isServerClient(client = clients.get(cname)))
-                    addDeviceReply(cname, ((ServerClient) client).execCommand(cmd), devices);
-            }
-        } else if (isServerClient(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((ServerClient) client).execCommand(cmd), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be server");
-        }
-        return reply;
+        return async.execCommand(deviceID, cmd).join();
     }
 
     @Override
     public ObjectNode execSudoCommand(String deviceID, String cmd) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = createGeneralReply();
-        ArrayNode devices = reply.putArray("devices");
-        SshClient client;
-
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isServerClient(client = clients.get(cname)))
-                    addDeviceReply(cname, ((ServerClient) client).execSudoCommand(cmd), devices);
-            }
-        } else if (isServerClient(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((ServerClient) client).execSudoCommand(cmd), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be server");
-        }
-        return reply;
+        return async.execSudoCommand(deviceID, cmd).join();
     }
 
     @Override
     public void setSsid(String deviceID, String ifname, String ssid) {
-        String deviceName = convert2name(deviceID);
-        SshClient client;
-
-        if (deviceName.equals("ALL")) {
-            clients.values().forEach(c -> {
-                if (isApClient(c)) {
-                    ((ApClient) c).setSsid(ifname, ssid);
-                }
-            });
-        } else if (isApClient(client = clients.get(deviceName))) {
-            ((ApClient) client).setSsid(ifname, ssid);
-        } else {
-            log.info("Remote machine should be AP");
+        ObjectNode reply = async.setSsid(deviceID, ifname, ssid).join();
+        if (reply.path("error").asBoolean(false)) {
+            log.info(reply.path("msg").asText());
         }
     }
 
     @Override
     public ObjectNode setVxlanSourceInterfaceLoopback(String deviceID, String loopbackId) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = createGeneralReply();
-        ArrayNode devices = reply.putArray("devices");
-        SshClient client;
-
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isVxlanSupported(client = clients.get(cname)))
-                    addDeviceReply(cname, ((VxlanSwitch) client).setVxlanSourceInterfaceLoopback(loopbackId), devices);
-            }
-        } else if (isVxlanSupported(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((VxlanSwitch) client).setVxlanSourceInterfaceLoopback(loopbackId), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be VXLAN supported switch");
-        }
-        return reply;
+        return async.setVxlanSourceInterfaceLoopback(deviceID, loopbackId).join();
     }
 
     @Override
     public ObjectNode setVxlanVlan(String deviceID, String vnid, String vid) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = createGeneralReply();
-        ArrayNode devices = reply.putArray("devices");
-        SshClient client;
-
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isVxlanSupported(client = clients.get(cname)))
-                    addDeviceReply(cname, ((VxlanSwitch) client).setVxlanVlan(vnid, vid), devices);
-            }
-        } else if (isVxlanSupported(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((VxlanSwitch) client).setVxlanVlan(vnid, vid), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be VXLAN supported switch");
-        }
-        return reply;
+        return async.setVxlanVlan(deviceID, vnid, vid).join();
     }
 
     @Override
     public ObjectNode setVxlanVtep(String deviceID, String vnid, String ip, String mac) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = createGeneralReply();
-        ArrayNode devices = reply.putArray("devices");
-        SshClient client;
-
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isVxlanSupported(client = clients.get(cname)))
-                    addDeviceReply(cname, ((VxlanSwitch) client).setVxlanVtep(vnid, ip, mac), devices);
-            }
-        } else if (isVxlanSupported(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((VxlanSwitch) client).setVxlanVtep(vnid, ip, mac), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be VXLAN supported switch");
-        }
-        return reply;
+        return async.setVxlanVtep(deviceID, vnid, ip, mac).join();
     }
 
     @Override
     public ObjectNode setVxlanStatus(String deviceID, boolean flag) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = createGeneralReply();
-        ArrayNode devices = reply.putArray("devices");
-        SshClient client;
+        return async.setVxlanStatus(deviceID, flag).join();
+    }
 
-        log.info("stauts: {}", flag);
+    @Override
+    public ObjectNode showVxlan(String deviceID) {
+        return async.showVxlan(deviceID).join();
+    }
 
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isVxlanSupported(client = clients.get(cname)))
-                    addDeviceReply(cname, ((VxlanSwitch) client).setVxlanStatus(flag), devices);
-            }
-        } else if (isVxlanSupported(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((VxlanSwitch) client).setVxlanStatus(flag), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be VXLAN supported switch");
+    @Override
+    public ObjectNode showVxlanTenantSystemLocal(String deviceID) {
+        return async.showVxlanTenantSystemLocal(deviceID).join();
+    }
+
+    @Override
+    public ObjectNode showVxlanTenantSystemRemote(String deviceID) {
+        return async.showVxlanTenantSystemRemote(deviceID).join();
+    }
+
+    @Override
+    public ObjectNode showVlan(String deviceID) {
+        return async.showVlan(deviceID).join();
+    }
+
+    @Override
+    public ObjectNode getFlowChanges(String deviceID, long since) {
+        return async.getFlowChanges(deviceID, since).join();
+    }
+
+    @Override
+    public ObjectNode batch(String deviceID, ArrayNode operations) {
+        return async.batch(deviceID, operations).join();
+    }
+
+    @Override
+    public ArrayNode getQueueStats() {
+        ArrayNode node = mapper.createArrayNode();
+        Inventory devices = inventory;
+        for (String cname : devices.order) {
+            DeviceCommandQueue queue = devices.clients.get(cname).commandQueue();
+            ObjectNode stats = mapper.createObjectNode();
+            stats.put("name", cname);
+            stats.put("depth", queue.depth());
+            stats.put("running", queue.running());
+            stats.put("completed", queue.completed());
+            stats.put("avgWaitMs", queue.averageWait());
+            stats.put("maxWaitMs", queue.maxWait());
+            node.add(stats);
         }
-        return reply;
+        return node;
     }
 
     @Override
-    public ObjectNode showVxlan(String deviceID) {
-        String deviceName = convert2name(deviceID);
-        ObjectNode reply = createGeneralReply();
-        ArrayNode devices = reply.putArray("devices");
-        SshClient client;
+    public ObjectNode getCacheStats() {
+        ObjectNode stats = cache.stats();
+        stats.set("snapshots", snapshots.stats());
+        return stats;
+    }
 
-        if (deviceName.equals("ALL")) {
-            for (String cname : clients.keySet()) {
-                if (isVxlanSupported(client = clients.get(cname)))
-                    addDeviceReply(cname, ((VxlanSwitch) client).showVxlan(), devices);
-            }
-        } else if (isVxlanSupported(client = clients.get(deviceName))) {
-            addDeviceReply(deviceName, ((VxlanSwitch) client).showVxlan(), devices);
-        } else {
-            reply.put("error", true);
-            reply.put("msg", "Remote machine should be VXLAN supported switch");
+    @Override
+    public ArrayNode getBreakerStats() {
+        ArrayNode node = mapper.createArrayNode();
+        Inventory devices = inventory;
+        for (String cname : devices.order) {
+            ObjectNode stats = devices.clients.get(cname).breaker().stats();
+            node.add(deviceReply(cname, stats));
         }
-        return reply;
+        return node;
+    }
+
+    @Override
+    public ObjectNode getSessionStats() {
+        return sessionPool.stats();
+    }
+
+    @Override
+    public ArrayNode getReadiness() {
+        return warmUp.readiness(inventory.order);
+    }
+
+    @Override
+    public ObjectNode getMetrics() {
+        return metrics.stats();
+    }
+
+    @Override
+    public SshClientAsyncService async() {
+        return async;
     }
 
     @Override
     public int[] getWidth() {
-        return width;
+        return inventory.width;
     }
 
     public SshClient getSshClient(String deviceID) {
         String deviceName = convert2name(deviceID);
-        return clients.getOrDefault(deviceID, null);
+        return inventory.clients.getOrDefault(deviceID, null);
     }
 
     private String convert2name(String deviceID) {
         try {
             Integer index = Integer.parseInt(deviceID);
-            return idToname.get(index);
+            return inventory.idToname.get(index);
         } catch (NumberFormatException e) {
             // Input is a string
             return deviceID;
         }
     }
 
+    /**
+     * Run an operation on a device, or on every device of the given kind when
+     * deviceID is "ALL". Devices are operated on concurrently and replied in
+     * index order. A null query marks an operation which changes the device;
+     * operation names the driver call in the latency metrics. With a timeout,
+     * devices still busy at the deadline are interrupted and replied timedOut.
+     */
+    private <T> CompletableFuture<ObjectNode> execute(String deviceID, String operation, Class<T> type, String typeError,
+                                                      String query, RequestOptions options,
+                                                      Function<T, ObjectNode> op) {
+        String deviceName = convert2name(deviceID);
+        ObjectNode reply = createGeneralReply();
+        ArrayNode devices = reply.putArray("devices");
+        Inventory inventory = this.inventory;
+        Map<String, SshClient> clients = inventory.clients;
+        List<String> targets;
+
+        if (ALL_CLIENTS_OPERATION_INDEX.equals(deviceName)) {
+            targets = inventory.order.stream()
+                    .filter(name -> type.isInstance(clients.get(name)))
+                    .collect(Collectors.toList());
+        } else if (type.isInstance(clients.get(deviceName))) {
+            targets = Collections.singletonList(deviceName);
+        } else {
+            reply.put("error", true);
+            reply.put("msg", typeError);
+            return CompletableFuture.completedFuture(reply);
+        }
+
+        Consumer<ObjectNode> listener = options.deviceListener();
+        long timeout = options.timeout();
+        long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        List<CompletableFuture<ObjectNode>> results = new ArrayList<>(targets.size());
+        for (String name : targets) {
+            ObjectNode cached = null;
+            if (query != null && !options.fresh()) {
+                // Snapshots only answer queries while they are kept up to date
+                cached = poller.isPolling() ? snapshots.get(name, query) : null;
+                if (cached == null) {
+                    cached = cache.get(name, query);
+                }
+            }
+            CompletableFuture<ObjectNode> result;
+            CircuitBreaker breaker = clients.get(name).breaker();
+            if (cached != null) {
+                result = CompletableFuture.completedFuture(cached);
+            } else if (breaker.isOpen()) {
+                ObjectNode refused = createGeneralReply();
+                refused.put("error", true);
+                refused.put("msg", breaker.refusal());
+                result = CompletableFuture.completedFuture(refused);
+            } else {
+                result = submit(name, clients.get(name), operation, type, query, options.timing(), deadline, op);
+                if (deadline != 0) {
+                    // Also covers devices still queued behind other requests
+                    result = result.completeOnTimeout(FanOutExecutor.timeoutReply(FanOutExecutor.DEADLINE_PASSED),
+                                                      timeout, TimeUnit.MILLISECONDS);
+                }
+            }
+            if (listener != null) {
+                // Hand the reply over and drop it, so streamed replies are
+                // not kept until the slowest device answers
+                result = result.thenApply(r -> {
+                    listener.accept(deviceReply(name, r));
+                    return null;
+                });
+            }
+            results.add(result);
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(v -> {
+            if (listener == null) {
+                for (int i = 0; i < targets.size(); i++) {
+                    devices.add(deviceReply(targets.get(i), results.get(i).join()));
+                }
+            }
+            return reply;
+        });
+    }
+
+    /**
+     * Queue an operation for a device and keep its cached state up to date;
+     * with timing, the reply handed back carries the time of each phase. An
+     * operation whose deadline passed while it was queued is not started.
+     */
+    private <T> CompletableFuture<ObjectNode> submit(String name, SshClient client, String operation, Class<T> type,
+                                                     String query, boolean timing, long deadline,
+                                                     Function<T, ObjectNode> op) {
+        long queued = System.nanoTime();
+        // The device slot is held until the operation really ends, even
+        // if the caller already got a timeout reply
+        return client.commandQueue().submit(release -> fanOut.submit(name, n -> {
+            if (deadline != 0 && deadline - System.nanoTime() <= 0) {
+                release.run();
+                return FanOutExecutor.timeoutReply(FanOutExecutor.DEADLINE_PASSED);
+            }
+            long generation = cache.generation(name);
+            long snapshotGeneration = snapshots.generation(name);
+            long start = System.nanoTime();
+            boolean failed = true;
+            PhaseTimer timer = timing ? PhaseTimer.start(queued) : null;
+            try {
+                ObjectNode result = op.apply(type.cast(client));
+                failed = result.path("error").asBoolean(false);
+                if (query != null) {
+                    cache.put(name, query, generation, result);
+                    snapshots.put(name, query, snapshotGeneration, result);
+                    track(name, query, result);
+                }
+                return timer == null ? result : timer.attachTo(result);
+            } finally {
+                if (timer != null) {
+                    timer.stop();
+                }
+                metrics.record(name, client.model, operation, System.nanoTime() - start, failed);
+                if (query == null) {
+                    cache.invalidate(name);
+                    snapshots.invalidate(name);
+                }
+                release.run();
+            }
+        }, deadline));
+    }
+
+    /**
+     * Feed flows and groups read from a switch to its change tracker
+     */
+    private void track(String name, String query, ObjectNode result) {
+        if (result.path("error").asBoolean(false)) {
+            return;
+        }
+        if ("flows".equals(query) && result.path("flows").isArray()) {
+            trackers.computeIfAbsent(name, k -> new FlowChangeTracker()).updateFlows((ArrayNode) result.get("flows"));
+        } else if ("groups".equals(query) && result.path("groups").isArray()) {
+            trackers.computeIfAbsent(name, k -> new FlowChangeTracker()).updateGroups((ArrayNode) result.get("groups"));
+        }
+    }
+
+    /**
+     * Reconnect to the devices whose circuit breaker is open and due for a
+     * probe; a connection which succeeds closes the breaker
+     */
+    private void probeOpenBreakers() {
+        inventory.clients.forEach((name, client) -> {
+            CircuitBreaker breaker = client.breaker();
+            if (!breaker.startProbe()) {
+                return;
+            }
+            client.commandQueue().submit(release -> fanOut.submit(name, n -> {
+                try {
+                    // Failures are recorded by the client itself
+                    client.warmUp();
+                    breaker.success();
+                } catch (Exception e) {
+                    log.debug("Probing {} failed: {}", name, e.getMessage());
+                } finally {
+                    breaker.endProbe();
+                    release.run();
+                }
+                return createGeneralReply();
+            }));
+        });
+    }
+
+    /**
+     * Refresh the snapshots of every query a device supports
+     */
+    private CompletableFuture<?> poll(String name) {
+        SshClient client = inventory.clients.get(name);
+        SshClientAsyncService fresh = async.withOptions(POLL_OPTIONS);
+        List<CompletableFuture<ObjectNode>> polls = new ArrayList<>();
+        if (client instanceof SwitchClient) {
+            polls.add(fresh.getController(name));
+            polls.add(fresh.getFlows(name));
+            polls.add(fresh.getGroups(name));
+        }
+        if (client instanceof VxlanSwitch) {
+            polls.add(fresh.showVxlan(name));
+            polls.add(fresh.showVxlanTenantSystemLocal(name));
+            polls.add(fresh.showVxlanTenantSystemRemote(name));
+        }
+        if (client instanceof VlanSwitch) {
+            polls.add(fresh.showVlan(name));
+        }
+        return CompletableFuture.allOf(polls.toArray(new CompletableFuture[0]));
+    }
+
     private ObjectNode createGeneralReply() {
         ObjectNode reply = mapper.createObjectNode();
         reply.put("error", false);
@@ -411,41 +587,195 @@ public class SshClientManager implements SshClientService {
     }
 
     private void addDeviceReply(String deviceID, ObjectNode reply, ArrayNode arr) {
-        ObjectNode device = mapper.createObjectNode();
-        device.put("name", deviceID);
-        merge(device, reply);
-        arr.add(device);
-    }
-
-    private void merge(JsonNode main, JsonNode update) {
-        Iterator<String> fieldnames = update.fieldNames();
-        while (fieldnames.hasNext()) {
-            String fn = fieldnames.next();
-            JsonNode value = main.get(fn);
-            if (value != null && value.isObject()) {
-                merge(value, update.get(fn));
-            } else {
-                if (main instanceof ObjectNode) {
-                    ((ObjectNode) main).set(fn, update.get(fn));
-                }
-            }
-        }
+        arr.add(deviceReply(deviceID, reply));
+    }
+
+    private ObjectNode deviceReply(String deviceID, ObjectNode reply) {
+        return ReplyWriter.deviceReply(deviceID, reply);
     }
 
     private boolean isSwitchClient(SshClient client) {
         return client instanceof SwitchClient;
     }
 
-    private boolean isServerClient(SshClient client) {
-        return client instanceof ServerClient;
-    }
+    /**
+     * Asynchronous view of the manager; every operation is defined here and
+     * the blocking service methods wait on it
+     */
+    private class AsyncManager implements SshClientAsyncService {
+        private final RequestOptions options;
 
-    private boolean isApClient(SshClient client) {
-        return client instanceof ApClient;
-    }
+        private AsyncManager(RequestOptions options) {
+            this.options = options;
+        }
+
+        @Override
+        public SshClientAsyncService withOptions(RequestOptions options) {
+            return new AsyncManager(options);
+        }
+
+        /**
+         * Run an operation which changes the devices; their cached query
+         * replies and snapshots are dropped
+         */
+        private <T> CompletableFuture<ObjectNode> operate(String deviceID, String operation, Class<T> type,
+                                                          String typeError, Function<T, ObjectNode> op) {
+            return execute(deviceID, operation, type, typeError, null, options, op);
+        }
+
+        /**
+         * Run a read-only operation, answered from the polled snapshot or the
+         * cache unless fresh data is requested
+         */
+        private <T> CompletableFuture<ObjectNode> query(String deviceID, String operation, Class<T> type,
+                                                        String typeError, String query, Function<T, ObjectNode> op) {
+            return execute(deviceID, operation, type, typeError, query, options, op);
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> getController(String deviceID) {
+            return query(deviceID, "getController", SwitchClient.class, "Remote machine should be switch",
+                         "controller", SwitchClient::getController);
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> getFlowChanges(String deviceID, long since) {
+            // Reading flows and groups feeds the trackers, whether the reply
+            // comes from the switch or from a snapshot
+            SshClientAsyncService collect = withOptions(options.toBuilder().deviceListener(null).build());
+            Consumer<ObjectNode> listener = options.deviceListener();
+            CompletableFuture<ObjectNode> flows = collect.getFlows(deviceID);
+            CompletableFuture<ObjectNode> groups = collect.getGroups(deviceID);
+            return flows.thenCombine(groups, (flowReply, groupReply) -> {
+                if (flowReply.path("error").asBoolean(false)) {
+                    return flowReply;
+                }
+                ObjectNode reply = createGeneralReply();
+                ArrayNode devices = reply.putArray("devices");
+                for (JsonNode device : flowReply.get("devices")) {
+                    String name = device.get("name").asText();
+                    FlowChangeTracker tracker = trackers.get(name);
+                    ObjectNode res;
+                    if (device.path("error").asBoolean(false) || tracker == null) {
+                        res = mapper.createObjectNode();
+                        res.put("error", true);
+                        res.put("msg", device.path("msg").asText("No flows read from switch"));
+                    } else {
+                        res = tracker.changesSince(since);
+                    }
+                    if (listener != null) {
+                        listener.accept(deviceReply(name, res));
+                    } else {
+                        addDeviceReply(name, res, devices);
+                    }
+                }
+                return reply;
+            });
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> setController(String deviceID, String ip, String port) {
+            return operate(deviceID, "setController", SwitchClient.class, "Remote machine should be switch",
+                           c -> c.setController(ip, port));
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> unsetController(String deviceID, String ip) {
+            return operate(deviceID, "unsetController", SwitchClient.class, "Remote machine should be switch",
+                           c -> c.unsetController(ip));
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> getFlows(String deviceID) {
+            return query(deviceID, "getFlows", SwitchClient.class, "Remote machine should be switch",
+                         "flows", SwitchClient::getFlows);
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> getGroups(String deviceID) {
+            return query(deviceID, "getGroups", SwitchClient.class, "Remote machine should be switch",
+                         "groups", SwitchClient::getGroups);
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> getLogs(String deviceID, String filename) {
+            return writeLogs(deviceID, filename);
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> execCommand(String deviceID, String cmd) {
+            return operate(deviceID, "execCommand", ServerClient.class, "Remote machine should be server",
+                           c -> c.execCommand(cmd));
+        }
 
-    private boolean isVxlanSupported(SshClient client) {
-        return client instanceof VxlanSwitch;
+        @Override
+        public CompletableFuture<ObjectNode> execSudoCommand(String deviceID, String cmd) {
+            return operate(deviceID, "execSudoCommand", ServerClient.class, "Remote machine should be server",
+                           c -> c.execSudoCommand(cmd));
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> setSsid(String deviceID, String ifname, String ssid) {
+            return operate(deviceID, "setSsid", ApClient.class, "Remote machine should be AP", c -> {
+                c.setSsid(ifname, ssid);
+                return createGeneralReply();
+            });
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> setVxlanSourceInterfaceLoopback(String deviceID, String loopbackId) {
+            return operate(deviceID, "setVxlanSourceInterfaceLoopback", VxlanSwitch.class, "Remote machine should be VXLAN supported switch",
+                           c -> c.setVxlanSourceInterfaceLoopback(loopbackId));
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> setVxlanVlan(String deviceID, String vnid, String vid) {
+            return operate(deviceID, "setVxlanVlan", VxlanSwitch.class, "Remote machine should be VXLAN supported switch",
+                           c -> c.setVxlanVlan(vnid, vid));
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> setVxlanVtep(String deviceID, String vnid, String ip, String mac) {
+            return operate(deviceID, "setVxlanVtep", VxlanSwitch.class, "Remote machine should be VXLAN supported switch",
+                           c -> c.setVxlanVtep(vnid, ip, mac));
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> setVxlanStatus(String deviceID, boolean flag) {
+            log.info("stauts: {}", flag);
+            return operate(deviceID, "setVxlanStatus", VxlanSwitch.class, "Remote machine should be VXLAN supported switch",
+                           c -> c.setVxlanStatus(flag));
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> showVxlan(String deviceID) {
+            return query(deviceID, "showVxlan", VxlanSwitch.class, "Remote machine should be VXLAN supported switch",
+                         "vxlan", VxlanSwitch::showVxlan);
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> showVxlanTenantSystemLocal(String deviceID) {
+            return query(deviceID, "showVxlanTenantSystemLocal", VxlanSwitch.class, "Remote machine should be VXLAN supported switch",
+                         "tenantLocal", VxlanSwitch::showVxlanTenantSystemLocal);
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> showVxlanTenantSystemRemote(String deviceID) {
+            return query(deviceID, "showVxlanTenantSystemRemote", VxlanSwitch.class, "Remote machine should be VXLAN supported switch",
+                         "tenantRemote", VxlanSwitch::showVxlanTenantSystemRemote);
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> showVlan(String deviceID) {
+            return query(deviceID, "showVlan", VlanSwitch.class, "Remote machine should be VLAN supported switch",
+                         "vlan", VlanSwitch::showVlan);
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> batch(String deviceID, ArrayNode operations) {
+            return operate(deviceID, "batch", SshShellClient.class, "Remote machine should be switch",
+                           c -> BatchOperation.run(c, operations));
+        }
     }
 
     private class SshClientConfigListener implements NetworkConfigListener {
@@ -457,16 +787,94 @@ public class SshClientManager implements SshClientService {
                 && event.configClass().equals(SshClientConfig.class)) {
                 SshClientConfig config = cfgService.getConfig(appId, SshClientConfig.class);
                 if (config != null) {
-                    config.parseConfig();
-                    clients = config.getClients();
-                    idToname = config.getIdMap();
-                    width = config.getMaxWidth();
+                    reload(config);
                     log.info("Config file uploaded successfully");
                 }
             }
         }
     }
 
+    /**
+     * Apply a new config; devices configured as before keep their client
+     * and its live session, while clients of changed or removed devices
+     * are closed once their queued requests are done
+     */
+    private synchronized void reload(SshClientConfig config) {
+        Inventory previous = inventory;
+        config.parseConfig(previous.clients);
+        config.getClients().values().forEach(c -> {
+            c.setSessionPool(sessionPool);
+            c.breaker().configure(config.breakerThreshold(), config.breakerProbeInterval());
+            if (c instanceof SshExecClient) {
+                ((SshExecClient) c).setMaxChannels(config.maxExecChannels());
+            }
+        });
+        sessionPool.configure(config.keepaliveInterval(), config.healthCheckInterval(),
+                              config.idleTimeout());
+        sessionPool.setMaxSessions(config.maxSessions());
+        Inventory next = new Inventory(config.getClients(), config.getIdMap(), config.getMaxWidth());
+        inventory = next;
+
+        List<String> added = next.order.stream()
+                .filter(name -> previous.clients.get(name) != next.clients.get(name))
+                .collect(Collectors.toList());
+        int retired = 0;
+        for (Map.Entry<String, SshClient> e : previous.clients.entrySet()) {
+            if (next.clients.get(e.getKey()) != e.getValue()) {
+                retire(e.getKey(), e.getValue());
+                retired++;
+            }
+        }
+        fanOut.setParallelism(config.parallelism());
+        fanOut.setDeviceTimeout(config.deviceTimeout());
+        cache.configure(config.cacheTtl(), config.cacheSize());
+        snapshots.configure(config.pollInterval() * SNAPSHOT_POLLS, Integer.MAX_VALUE);
+        metrics.retain(next.clients.keySet());
+        poller.configure(config.pollInterval(), config.pollJitter());
+        poller.setDevices(next.order);
+        if (config.warmUp()) {
+            warmUp.start(next.clients, added, config.warmUpParallelism());
+        } else {
+            warmUp.cancel();
+        }
+        log.info("{} devices configured, {} new or changed, {} closed", next.order.size(), added.size(), retired);
+    }
+
+    /**
+     * Forget the state of a device whose client left the config, and close
+     * the client after the requests queued for it
+     */
+    private void retire(String name, SshClient client) {
+        cache.invalidate(name);
+        snapshots.invalidate(name);
+        trackers.remove(name);
+        client.commandQueue().submit(release -> {
+            try {
+                client.close();
+            } finally {
+                release.run();
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Devices of one config
+     */
+    private static final class Inventory {
+        private final Map<String, SshClient> clients;
+        private final Map<Integer, String> idToname;
+        private final List<String> order;
+        private final int[] width;
+
+        private Inventory(Map<String, SshClient> clients, Map<Integer, String> idToname, int[] width) {
+            this.clients = clients;
+            this.idToname = idToname;
+            this.order = new ArrayList<>(new TreeMap<>(idToname).values());
+            this.width = width;
+        }
+    }
+
     public static enum DeviceModel {
         DGS_3000,
         DGS_3630,
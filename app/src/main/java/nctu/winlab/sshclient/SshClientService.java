@@ -53,6 +53,16 @@ public interface SshClientService {
      * @return JSON object included fields: error, msg, array list of groups
      */
     public ObjectNode getGroups(String deviceID);
+    /**
+     * Get changes of installed flow rules and groups of switch
+     * 
+     * @param deviceID switch name; if given "ALL", then represent all switches
+     * @param since version of flows and groups the caller already has; 0 for none
+     * @return JSON object included fields: error, msg, array list of device version
+     *         and added, removed and modified flows and groups, or the full
+     *         lists if the version is too old
+     */
+    public ObjectNode getFlowChanges(String deviceID, long since);
     /**
      * Write system log of switch into a file
      * 
@@ -124,11 +134,85 @@ public interface SshClientService {
      * @return JSON object included fields: error, msg, array list of device msg
      */
     public ObjectNode showVxlan(String deviceID);
+    /**
+     * Show VXLAN tenant systems attached to local ports of switch
+     * 
+     * @param deviceID switch name; if given "ALL", then represent all VXLAN supported switches
+     * @return JSON object included fields: error, msg, array list of device hosts
+     */
+    public ObjectNode showVxlanTenantSystemLocal(String deviceID);
+    /**
+     * Show VXLAN tenant systems learned from remote VTEPs
+     * 
+     * @param deviceID switch name; if given "ALL", then represent all VXLAN supported switches
+     * @return JSON object included fields: error, msg, array list of device hosts
+     */
+    public ObjectNode showVxlanTenantSystemRemote(String deviceID);
+    /**
+     * Show VLANs of switch
+     * 
+     * @param deviceID switch name; if given "ALL", then represent all VLAN supported switches
+     * @return JSON object included fields: error, msg, array list of device vlans
+     */
+    public ObjectNode showVlan(String deviceID);
+    /**
+     * Apply several setter operations on a switch in a single round trip
+     * 
+     * @param deviceID switch name; if given "ALL", then represent all switches
+     * @param operations list of operations, each naming the setter in field "op"
+     * @return JSON object included fields: error, msg, array list of device msg
+     *         with a result per operation
+     */
+    public ObjectNode batch(String deviceID, ArrayNode operations);
     /**
      * Get lengths of device-related fields
      * @return a list containing field length: name, IP, model, username, port
      */
     public int[] getWidth();
+    /**
+     * Get command queue statistics of every device
+     * @return list of devices with queue depth, running requests, completed
+     *         requests, average and maximum wait time in milliseconds
+     */
+    public ArrayNode getQueueStats();
+    /**
+     * Get statistics of the query reply cache
+     * @return JSON object included fields: size, hits, misses, evictions, hitRatio,
+     *         and the same statistics of polled snapshots in field snapshots
+     */
+    public ObjectNode getCacheStats();
+    /**
+     * Get the circuit breaker state of every device
+     * @return list of devices with name, state (open or closed), consecutive
+     *         failures, trips and lastError
+     */
+    public ArrayNode getBreakerStats();
+    /**
+     * Get statistics of the SSH sessions shared by all devices
+     * @return JSON object included fields: open, maxSessions, inUse, opened,
+     *         evicted, idleClosed and rejected
+     */
+    public ObjectNode getSessionStats();
+    /**
+     * Get the readiness of every device after the warm-up run when the
+     * config is loaded
+     * @return list of devices with name, state (cold, pending, ready, failed
+     *         or cancelled), connectMs and msg
+     */
+    public ArrayNode getReadiness();
+    /**
+     * Get latency statistics of the operations run on devices
+     * @return JSON object included fields: operations, count, errors, p50Ms,
+     *         p99Ms, p999Ms, maxMs and meanMs of each operation over all
+     *         devices; models, the same by model; devices, list of devices
+     *         with name, model and the statistics of their operations
+     */
+    public ObjectNode getMetrics();
+    /**
+     * Get the non-blocking view of this service
+     * @return asynchronous service backed by the same devices
+     */
+    public SshClientAsyncService async();
     /**
      * Get Sshclient for certain device
      * @param deviceID switch name
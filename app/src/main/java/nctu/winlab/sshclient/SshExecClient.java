@@ -1,119 +1,127 @@
 package nctu.winlab.sshclient;
 
 import com.jcraft.jsch.ChannelExec;
+import nctu.winlab.sshclient.PhaseTimer.Phase;
+import nctu.winlab.sshclient.SshSessionPool.Lease;
 
-import static nctu.winlab.sshclient.SSHConstants.ANSI_BOLD;
-import static nctu.winlab.sshclient.SSHConstants.ANSI_RED;
-import static nctu.winlab.sshclient.SSHConstants.ANSI_RESET;
-
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 
 public class SshExecClient extends SshClient {
+    public static final int DEFAULT_MAX_CHANNELS = 8;
+
+    // Commands run on their own exec channel over the shared session; the
+    // command queue lets several be in flight at once, one per channel
     public SshExecClient(String ip, String port, String username, String password) {
         super(ip, port, username, password);
+        commandQueue.setPermits(DEFAULT_MAX_CHANNELS);
     }
 
-    private void connectToServer() throws Exception {
-        try {
-            if (session == null || !session.isConnected()) {
-                session = jsch.getSession(username, ip, Integer.parseInt(port));
-                session.setPassword(password);
-                session.setConfig("StrictHostKeyChecking", "no");
-                session.connect(3000);
-            }
-        }
-        catch (Exception e) {
-            System.err.printf(ANSI_RED + ANSI_BOLD + "\nFailed to connect to %s:%s\n" + ANSI_RESET, ip, port);
-            throw e;
+    /**
+     * Limit the number of exec channels open at the same time on this device
+     *
+     * @param maxChannels maximum number of concurrent commands
+     */
+    public void setMaxChannels(int maxChannels) {
+        if (maxChannels < 1) {
+            throw new IllegalArgumentException("Channel limit should be positive");
         }
+        commandQueue.setPermits(maxChannels);
     }
 
     public String sendCmd(String cmd) throws Exception {
+        return exec(cmd);
+    }
+    
+    public String sendSudoCmd(String cmd, String passwd) throws Exception {
+        return exec("echo " + passwd + " | sudo -S " + cmd);
+    }
+
+    private String exec(String cmd) {
         String ret = "";
+        Lease lease;
+        PhaseTimer.mark(Phase.PARSE);
         try {
-            connectToServer();
-            channel = session.openChannel("exec");
-            ((ChannelExec)channel).setCommand(cmd);
-            
-            InputStream in = channel.getInputStream();
-            InputStream err = channel.getExtInputStream();
-            // reader = new BufferedReader(new InputStreamReader(channel.getInputStream()));
-            channel.connect();
-
-            ret = recvOutput(in, err);
+            lease = acquireSession();
         }
         catch (Exception out) {
-            ret = out.getMessage();
+            return out.getMessage();
         }
-        return ret;
-    }
-    
-    public String sendSudoCmd(String cmd, String passwd) throws Exception {
-        String ret = "";
+        ChannelExec exec = null;
         try {
-            connectToServer();
-            channel = session.openChannel("exec");
-            ((ChannelExec)channel).setCommand("echo " + passwd + " | sudo -S " + cmd);
-            
-            InputStream in = channel.getInputStream();
-            InputStream err = channel.getExtInputStream();
-            // reader = new BufferedReader(new InputStreamReader(channel.getInputStream()));
-            channel.connect();
+            exec = (ChannelExec) lease.session().openChannel("exec");
+            exec.setCommand(cmd);
+
+            // JSch writes both streams from its session thread as data
+            // arrives and closes stdout on channel EOF or close
+            OutputCollector out = new OutputCollector();
+            OutputCollector err = new OutputCollector();
+            exec.setOutputStream(out);
+            exec.setErrStream(err);
+            // The command goes out with the channel request, so writing
+            // it is timed as part of opening the channel
+            exec.connect();
+            PhaseTimer.mark(Phase.CHANNEL_OPEN);
 
-            ret = recvOutput(in, err);
+            ret = recvOutput(out, err);
+            breaker.success();
+        }
+        catch (InterruptedException out) {
+            // The caller gave up on the command, which says nothing about
+            // the device, so the breaker is left alone
+            Thread.currentThread().interrupt();
+            ret = FanOutExecutor.DEADLINE_PASSED;
         }
         catch (Exception out) {
             ret = out.getMessage();
+            breaker.failure(ret);
+        }
+        finally {
+            if (exec != null) {
+                exec.disconnect();
+            }
+            releaseSession(lease);
         }
         return ret;
     }
 
-    // public String recvCmd() {
-    //     char[] buf = new char[1024];
-    //     String reply = "";
-    //     try {
-    //         int nbytes;
-    //         while ((nbytes = reader.read(buf, 0, 1024)) > -1) {
-    //             reply = reply + String.valueOf(buf, 0, nbytes);
-    //         }
-    //     }
-    //     catch (Exception e) {
-    //         e.printStackTrace();
-    //     }
-    //     return reply;
-    // }
+    private String recvOutput(OutputCollector out, OutputCollector err) throws Exception {
+        // Wakes up as soon as the channel reaches EOF; interruptible so a
+        // command past its deadline can be abandoned
+        out.closed.get();
+        long firstByte = Math.min(out.firstByte, err.firstByte);
+        PhaseTimer.mark(Phase.FIRST_BYTE, firstByte == Long.MAX_VALUE ? System.nanoTime() : firstByte);
+        PhaseTimer.mark(Phase.LAST_BYTE);
+        String prompt = String.format("[sudo] password for %s: ", username);
+        String err_out = err.text().replace(prompt, "").trim();
+        String std_out = out.text().trim();
+
+        return err_out.equals("") ? std_out : err_out;
+    }
 
-    private String recvOutput(InputStream in, InputStream err) throws IOException {
-        byte[] buffer = new byte[1024];
-        byte[] err_buffer = new byte[1024];
-        StringBuilder strBuilder = new StringBuilder();
-        StringBuilder errStrBuilder = new StringBuilder();
+    /**
+     * Buffer filled by the channel which signals when the channel closes it
+     */
+    private static class OutputCollector extends ByteArrayOutputStream {
+        private final CompletableFuture<Void> closed = new CompletableFuture<>();
+        private volatile long firstByte = Long.MAX_VALUE;
 
-        while (true){
-            while (in.available() > 0) {
-                int i = in.read(buffer, 0, 1024);
-                if (i < 0) {
-                    break;
-                }
-                strBuilder.append(new String(buffer, 0, i));
-            }
-            while (err.available() > 0) {
-                int i = err.read(err_buffer, 0, 1024);
-                if (i < 0) break;
-                errStrBuilder.append(new String(err_buffer, 0, i));
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            if (firstByte == Long.MAX_VALUE) {
+                firstByte = System.nanoTime();
             }
-            if (channel.isClosed()){
-                break;
-            }
-            try {
-                Thread.sleep(10);
-            } catch (Exception ee){}
+            super.write(b, off, len);
         }
-        String prompt = String.format("[sudo] password for %s: ", username);
-        String err_out = errStrBuilder.toString().replace(prompt, "").trim();
-        String std_out = strBuilder.toString().trim();
 
-        return err_out.equals("") ? std_out : err_out;
+        @Override
+        public void close() {
+            closed.complete(null);
+        }
+
+        private synchronized String text() {
+            return new String(buf, 0, count, StandardCharsets.UTF_8);
+        }
     }
 }
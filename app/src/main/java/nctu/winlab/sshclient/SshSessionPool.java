@@ -0,0 +1,464 @@
+package nctu.winlab.sshclient;
+
+import com.jcraft.jsch.JSchException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jcraft.jsch.Session;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Pool of SSH sessions keyed by device endpoint
+ *
+ * Sessions are opened on first use and kept open between requests, with
+ * keepalives sent by JSch itself. A background task reconnects sessions
+ * which died, a few at a time and skipping devices whose breaker is open,
+ * and closes sessions which stayed idle for too long; the next request to a
+ * device whose session was closed as idle pays for one handshake. At most a
+ * fixed number of sessions are open at once; opening one more closes the
+ * least recently used idle session, or waits for one to become idle.
+ */
+public class SshSessionPool {
+    public static final long DEFAULT_KEEPALIVE_INTERVAL = 15000;
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 10000;
+    public static final long DEFAULT_IDLE_TIMEOUT = 600000;
+    public static final int DEFAULT_MAX_SESSIONS = 512;
+    // How long opening a session waits for another one to become idle
+    private static final long SLOT_TIMEOUT = 10000;
+    // Dead sessions reconnected at the same time by the health check
+    private static final int RECONNECT_THREADS = 4;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService checker =
+            Executors.newSingleThreadScheduledExecutor(groupedThreads("sshclient", "session-checker"));
+    private final ThreadPoolExecutor reconnector = new ThreadPoolExecutor(
+            RECONNECT_THREADS, RECONNECT_THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(DEFAULT_MAX_SESSIONS),
+            groupedThreads("sshclient", "session-reconnect-%d"));
+    private ScheduledFuture<?> checkTask;
+    private volatile long keepaliveInterval = DEFAULT_KEEPALIVE_INTERVAL;
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    // Open sessions and their limit, guarded by slots
+    private final Object slots = new Object();
+    private int maxSessions = DEFAULT_MAX_SESSIONS;
+    private int open;
+    private int waiting;
+    private long opened;
+    private long evicted;
+    private long idleClosed;
+    private long rejected;
+
+    public SshSessionPool() {
+        reconnector.allowCoreThreadTimeOut(true);
+        configure(DEFAULT_KEEPALIVE_INTERVAL, DEFAULT_HEALTH_CHECK_INTERVAL, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Change the number of sessions open at the same time; sessions above a
+     * lowered limit are closed as they become idle
+     *
+     * @param maxSessions maximum number of open sessions
+     */
+    public void setMaxSessions(int maxSessions) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("Session limit should be positive");
+        }
+        synchronized (slots) {
+            this.maxSessions = maxSessions;
+            slots.notifyAll();
+        }
+        while (evictable() && evictIdle()) {
+            // Close idle sessions until the new limit is met
+        }
+    }
+
+    /**
+     * Change keepalive and health check settings
+     *
+     * @param keepaliveInterval milliseconds between keepalives on an idle session
+     * @param healthCheckInterval milliseconds between health checks
+     * @param idleTimeout milliseconds a session may stay unused before it is closed
+     */
+    public synchronized void configure(long keepaliveInterval, long healthCheckInterval, long idleTimeout) {
+        this.keepaliveInterval = keepaliveInterval;
+        this.idleTimeout = idleTimeout;
+        if (checkTask != null) {
+            checkTask.cancel(false);
+        }
+        checkTask = checker.scheduleWithFixedDelay(this::checkHealth, healthCheckInterval,
+                                                   healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get a connected session for a client, connecting only if the pool has
+     * no live session for it. Every call must be paired with a release of
+     * the returned lease.
+     *
+     * @param client SSH client
+     * @return lease of a connected session
+     * @throws JSchException if a new session cannot be established
+     */
+    public Lease acquire(SshClient client) throws JSchException {
+        Entry entry = entries.computeIfAbsent(client.endpoint(), k -> new Entry());
+        synchronized (entry) {
+            entry.client = client;
+            if (entry.session != null && entry.session.isConnected()) {
+                return use(entry);
+            }
+            disconnect(entry);
+        }
+
+        // Make room without holding the entry, since closing another
+        // session locks that session's entry
+        reserveSlot();
+        synchronized (entry) {
+            // Entries are only removed under their lock, so once the entry is
+            // mapped here it stays mapped until the session is counted in it
+            if (entries.computeIfAbsent(client.endpoint(), k -> entry) != entry) {
+                // Dropped and replaced meanwhile; use the new entry instead
+                freeSlot();
+                return acquire(client);
+            }
+            entry.client = client;
+            if (entry.session != null && entry.session.isConnected()) {
+                freeSlot();
+                return use(entry);
+            }
+            disconnect(entry);
+            try {
+                entry.session = connect(client);
+            } catch (JSchException e) {
+                freeSlot();
+                throw e;
+            }
+            return use(entry);
+        }
+    }
+
+    /**
+     * Mark the end of a use of a session; releasing a lease again has no
+     * effect
+     *
+     * @param lease lease returned by acquire
+     */
+    public void release(Lease lease) {
+        // The lease keeps its own entry, which may have been dropped and
+        // replaced since, so the use is never taken off another session
+        Entry entry = lease.entry;
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (lease.released) {
+                return;
+            }
+            lease.released = true;
+            entry.inUse--;
+            entry.lastUsed = System.currentTimeMillis();
+            if (entry.inUse > 0) {
+                return;
+            }
+        }
+        synchronized (slots) {
+            if (waiting > 0) {
+                slots.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Close and forget the session of a client, unless another client of
+     * the same endpoint has used it since
+     *
+     * @param client SSH client
+     */
+    public void invalidate(SshClient client) {
+        Entry entry = entries.get(client.endpoint());
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.client == client) {
+                disconnect(entry);
+                entries.remove(client.endpoint(), entry);
+            }
+        }
+    }
+
+    /**
+     * Get statistics of the open sessions
+     *
+     * @return JSON object included fields: open, maxSessions, inUse, opened,
+     *         evicted (idle sessions closed to stay within the limit),
+     *         idleClosed (closed after the idle timeout) and rejected
+     *         (sessions not opened because the limit was reached)
+     */
+    public ObjectNode stats() {
+        int inUse = 0;
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                inUse += entry.inUse > 0 && entry.session != null ? 1 : 0;
+            }
+        }
+        ObjectNode stats = mapper.createObjectNode();
+        synchronized (slots) {
+            stats.put("open", open);
+            stats.put("maxSessions", maxSessions);
+            stats.put("inUse", inUse);
+            stats.put("opened", opened);
+            stats.put("evicted", evicted);
+            stats.put("idleClosed", idleClosed);
+            stats.put("rejected", rejected);
+        }
+        return stats;
+    }
+
+    public void shutdown() {
+        checker.shutdownNow();
+        reconnector.shutdownNow();
+        entries.values().forEach(entry -> {
+            synchronized (entry) {
+                disconnect(entry);
+            }
+        });
+        entries.clear();
+    }
+
+    private Session connect(SshClient client) throws JSchException {
+        Session session = client.openSession();
+        session.setServerAliveInterval((int) keepaliveInterval);
+        session.setServerAliveCountMax(3);
+        return session;
+    }
+
+    private Lease use(Entry entry) {
+        entry.inUse++;
+        entry.lastUsed = System.currentTimeMillis();
+        return new Lease(entry, entry.session);
+    }
+
+    // Caller holds the lock of the entry
+    private void disconnect(Entry entry) {
+        if (entry.session != null) {
+            entry.session.disconnect();
+            entry.session = null;
+            freeSlot();
+        }
+    }
+
+    /**
+     * Count a session about to be opened, closing the least recently used
+     * idle session or waiting for one to become idle if the limit is reached
+     */
+    private void reserveSlot() throws JSchException {
+        long deadline = System.currentTimeMillis() + SLOT_TIMEOUT;
+        while (true) {
+            synchronized (slots) {
+                if (open < maxSessions) {
+                    open++;
+                    opened++;
+                    return;
+                }
+            }
+            if (evictIdle()) {
+                continue;
+            }
+            synchronized (slots) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    rejected++;
+                    throw new JSchException("Session limit of " + maxSessions + " reached");
+                }
+                if (open >= maxSessions) {
+                    waiting++;
+                    try {
+                        slots.wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new JSchException("Interrupted waiting for a session slot");
+                    } finally {
+                        waiting--;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Count a session about to be opened if the limit allows it, without
+     * closing or waiting for other sessions
+     */
+    private boolean tryReserveSlot() {
+        synchronized (slots) {
+            if (open >= maxSessions) {
+                return false;
+            }
+            open++;
+            opened++;
+            return true;
+        }
+    }
+
+    private void freeSlot() {
+        synchronized (slots) {
+            open--;
+            slots.notifyAll();
+        }
+    }
+
+    private boolean evictable() {
+        synchronized (slots) {
+            return open > maxSessions;
+        }
+    }
+
+    /**
+     * Close the least recently used session which is not in use
+     *
+     * @return whether a session was closed
+     */
+    private boolean evictIdle() {
+        while (true) {
+            Entry victim = null;
+            for (Entry entry : entries.values()) {
+                // Read without locking; the choice is checked again below
+                if (entry.inUse == 0 && entry.session != null
+                        && (victim == null || entry.lastUsed < victim.lastUsed)) {
+                    victim = entry;
+                }
+            }
+            if (victim == null) {
+                return false;
+            }
+            synchronized (victim) {
+                if (victim.inUse == 0 && victim.session != null) {
+                    log.debug("Closing least recently used session to {}", victim.client.endpoint());
+                    disconnect(victim);
+                    synchronized (slots) {
+                        evicted++;
+                    }
+                    return true;
+                }
+            }
+        }
+    }
+
+    private void checkHealth() {
+        long now = System.currentTimeMillis();
+        entries.forEach((endpoint, entry) -> {
+            synchronized (entry) {
+                if (entry.inUse > 0) {
+                    return;
+                }
+                if (now - entry.lastUsed > idleTimeout) {
+                    log.debug("Closing idle session to {}", endpoint);
+                    if (entry.session != null) {
+                        synchronized (slots) {
+                            idleClosed++;
+                        }
+                    }
+                    disconnect(entry);
+                    entries.remove(endpoint, entry);
+                    return;
+                }
+                if (entry.session != null && !entry.session.isConnected()) {
+                    log.debug("Dropping dead session to {}", endpoint);
+                    disconnect(entry);
+                    scheduleReconnect(endpoint, entry);
+                }
+            }
+        });
+    }
+
+    // Caller holds the lock of the entry. Reconnecting runs apart from the
+    // check, so an unreachable device never stalls the check of the others;
+    // devices whose breaker is open are left to the breaker probe.
+    private void scheduleReconnect(String endpoint, Entry entry) {
+        if (entry.reconnecting || entry.client.breaker().isOpen()) {
+            return;
+        }
+        entry.reconnecting = true;
+        try {
+            reconnector.execute(() -> reconnect(endpoint, entry));
+        } catch (RejectedExecutionException e) {
+            // Shutting down or too many at once; the next use reconnects
+            entry.reconnecting = false;
+        }
+    }
+
+    private void reconnect(String endpoint, Entry entry) {
+        synchronized (entry) {
+            try {
+                // Skip entries used, closed or dropped meanwhile, and never
+                // close another session to make room
+                if (entry.inUse > 0 || entry.session != null || entries.get(endpoint) != entry
+                        || !tryReserveSlot()) {
+                    return;
+                }
+                try {
+                    entry.session = connect(entry.client);
+                    log.debug("Reconnected session to {}", endpoint);
+                } catch (JSchException e) {
+                    freeSlot();
+                    // Counted against the breaker by openSession
+                    log.debug("Failed to reconnect session to {}", endpoint, e);
+                }
+            } finally {
+                entry.reconnecting = false;
+            }
+        }
+    }
+
+    /**
+     * Use of a pooled session, handed back through release
+     */
+    public static final class Lease {
+        private final Entry entry;
+        private final Session session;
+        // Guarded by the lock of the entry
+        private boolean released;
+
+        private Lease(Entry entry, Session session) {
+            this.entry = entry;
+            this.session = session;
+        }
+
+        /**
+         * Lease of a session which is not pooled; releasing it does nothing
+         *
+         * @param session session managed by its client
+         * @return lease of the session
+         */
+        static Lease unpooled(Session session) {
+            return new Lease(null, session);
+        }
+
+        /**
+         * Connected session of the lease
+         */
+        public Session session() {
+            return session;
+        }
+    }
+
+    private static class Entry {
+        // Written under the lock of the entry; volatile for the eviction scan
+        private volatile SshClient client;
+        private volatile Session session;
+        private volatile int inUse;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private boolean reconnecting;
+    }
+}
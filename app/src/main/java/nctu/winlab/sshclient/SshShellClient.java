@@ -8,53 +8,360 @@
  */
 package nctu.winlab.sshclient;
 
-import static nctu.winlab.sshclient.SSHConstants.ANSI_BOLD;
-import static nctu.winlab.sshclient.SSHConstants.ANSI_RED;
-import static nctu.winlab.sshclient.SSHConstants.ANSI_RESET;
+import com.jcraft.jsch.Session;
+import nctu.winlab.sshclient.PhaseTimer.Phase;
+import nctu.winlab.sshclient.SshSessionPool.Lease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 public class SshShellClient extends SshClient {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    // Sessions acquired by sent commands whose reply is not read yet
+    private final Deque<Lease> leases = new ArrayDeque<>();
     private PrintWriter writer;
     protected final Commander commander = new Commander();
 
+    /**
+     * CLI modes of a switch shell; each mode is entered from its parent and
+     * left with "exit"
+     */
+    public enum CliMode {
+        EXEC(null),
+        PRIVILEGED(EXEC),
+        CONFIG(PRIVILEGED),
+        INTERFACE(CONFIG),
+        VLAN_DATABASE(PRIVILEGED);
+
+        private final CliMode parent;
+
+        CliMode(CliMode parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * Whether this mode is the given mode or is reached through it
+         */
+        public boolean isWithin(CliMode mode) {
+            for (CliMode m = this; m != null; m = m.parent) {
+                if (m == mode) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     public SshShellClient(String ip, String port, String username, String password) {
         super(ip, port, username, password);
     }
 
+    /**
+     * Mode the shell is in right after login
+     */
+    protected CliMode initialMode() {
+        return CliMode.EXEC;
+    }
+
+    /**
+     * Command entering a mode from its parent
+     *
+     * @param mode mode to enter
+     * @param arg mode argument, such as the interface name
+     */
+    protected String enterCommand(CliMode mode, String arg) {
+        switch (mode) {
+            case PRIVILEGED:
+                return "enable";
+            case CONFIG:
+                return "configure";
+            case INTERFACE:
+                return "interface " + arg;
+            case VLAN_DATABASE:
+                return "vlan database";
+            default:
+                throw new IllegalArgumentException("Mode " + mode + " cannot be entered");
+        }
+    }
+
+    /**
+     * Command turning off the --More-- prompt for the rest of the shell
+     * session, or null if the device does not page its output
+     */
+    protected String pagingOffCommand() {
+        return "terminal length 0";
+    }
+
     private void connectToServer() throws Exception {
+        Lease lease = acquireSession();
+        Session s = lease.session();
         try {
-            if (session == null || !session.isConnected()) {
-                session = jsch.getSession(username, ip, Integer.parseInt(port));
-                session.setPassword(password);
-                session.setConfig("StrictHostKeyChecking", "no");
-                session.connect(3000);
+            if (s != session || channel == null || !channel.isConnected()) {
+                // The pool may have replaced the session, so open a new shell on it
+                session = s;
                 channel = session.openChannel("shell");
-            }
-            if (!channel.isConnected()) {
                 writer = new PrintWriter(channel.getOutputStream(), true);
                 reader = new BufferedReader(new InputStreamReader(channel.getInputStream()));
                 channel.connect(3000);
+                commander.reset();
+                // A pager would take the lines queued behind a command as
+                // keys; its output lands before the echo of the first command
+                String pagingOff = pagingOffCommand();
+                if (pagingOff != null) {
+                    writer.print(pagingOff + "\n");
+                }
+                PhaseTimer.mark(Phase.CHANNEL_OPEN);
             }
         }
         catch (Exception e) {
-            System.err.printf(ANSI_RED + ANSI_BOLD + "\nFailed to connect to %s:%s\n" + ANSI_RESET, ip, port);
+            releaseSession(lease);
+            if (!interrupted(e)) {
+                breaker.failure(e.getMessage());
+            }
+            log.warn("Failed to open shell on {}:{}", ip, port, e);
             throw e;
         }
+        leases.add(lease);
+    }
+
+    /**
+     * Hand back the session used by the oldest command whose reply was read
+     */
+    private void releaseShell() {
+        releaseSession(leases.poll());
+    }
+
+    @Override
+    public void warmUp() throws Exception {
+        // Open the shell as well, which takes about as long as the session
+        connectToServer();
+        releaseShell();
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            channel.disconnect();
+        }
+        super.close();
+    }
+
+    /**
+     * Run several driver operations in one round trip
+     *
+     * The operations only queue their commands; all of them are written to
+     * the shell in a single burst and the replies are then split by their
+     * end marks and handed back as each operation's raw output. Operations
+     * must not depend on their reply, i.e. only setters can be batched.
+     *
+     * @param ops driver operations of this client
+     * @return reply of every operation, in order
+     */
+    public List<ObjectNode> batch(List<Supplier<ObjectNode>> ops) {
+        List<ObjectNode> results = new ArrayList<>(ops.size());
+        List<Integer> ends = new ArrayList<>(ops.size());
+        commander.batching = true;
+        try {
+            for (Supplier<ObjectNode> op : ops) {
+                ObjectNode res;
+                try {
+                    res = op.get();
+                } catch (RuntimeException e) {
+                    res = createGeneralReply();
+                    res.put("error", true);
+                    res.put("msg", String.valueOf(e.getMessage()));
+                }
+                results.add(res);
+                ends.add(commander.mainCmds.size());
+            }
+        } finally {
+            commander.batching = false;
+        }
+
+        List<String> replies = new ArrayList<>();
+        String failure = null;
+        try {
+            commander.sendCmd();
+            try {
+                while (!commander.mainCmds.isEmpty()) {
+                    replies.add(commander.readReply());
+                }
+            } finally {
+                releaseShell();
+            }
+        } catch (Exception e) {
+            failure = e.getMessage();
+            commander.mainCmds.clear();
+        }
+
+        assignReplies(results, ends, replies, failure);
+        return results;
+    }
+
+    /**
+     * Hand the replies read for a batch to its operations, each checked for
+     * CLI errors like the reply of a setter run on its own
+     *
+     * @param results reply of each operation, as it queued its commands
+     * @param ends number of main commands queued up to each operation
+     * @param replies replies read, in order
+     * @param failure why reading stopped before the last reply, or null
+     */
+    static void assignReplies(List<ObjectNode> results, List<Integer> ends, List<String> replies, String failure) {
+        int from = 0;
+        for (int i = 0; i < results.size(); i++) {
+            ObjectNode res = results.get(i);
+            int to = ends.get(i);
+            if (!res.path("error").asBoolean(false)) {
+                if (to <= replies.size()) {
+                    String raw = String.join("", replies.subList(from, to));
+                    res.put("raw", raw);
+                    markRejected(res, raw);
+                } else {
+                    // Written but never confirmed, so the device may or may
+                    // not have run it
+                    res.put("error", true);
+                    res.put("msg", "No reply before the shell failed: " + (failure == null ? "unknown error" : failure));
+                }
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * Find a rejected command among those written ahead of a main command,
+     * such as the commands changing mode
+     *
+     * @param skipped output read before the echo of the main command
+     * @param lead first line written for the main command
+     * @param mainCmd main command
+     * @return first error line printed from the echo of lead on, or null
+     */
+    static String rejectedSetup(String skipped, String lead, String mainCmd) {
+        if (lead == null || lead.equals(mainCmd)) {
+            return null;
+        }
+        // Output before the echo of lead answers earlier commands, such as
+        // the end mark of the previous reply
+        int at = skipped.indexOf(lead);
+        return at < 0 ? null : CliText.errorLine(skipped.substring(at + lead.length()));
+    }
+
+    /**
+     * Mark a reply as failed if the CLI rejected one of the commands whose
+     * output it carries
+     *
+     * @param res reply of a setter
+     * @param raw output of its commands
+     */
+    protected static void markRejected(ObjectNode res, String raw) {
+        String error = CliText.errorLine(raw);
+        if (error != null) {
+            res.put("error", true);
+            res.put("msg", error);
+        }
     }
 
     protected class Commander {
-        private ArrayList<String> cmds = new ArrayList<String>();
-        private String mainCmd;
-        private static final String CMD_END_MARK = "# CMD_END #";
-        private static final int RECV_BUF_SIZE = 1024;
+        // Command lines, or mode changes resolved when sending
+        private ArrayList<Object> cmds = new ArrayList<Object>();
+        private final ReplyReader replyReader = new ReplyReader();
+        private final Deque<String> mainCmds = new ArrayDeque<>();
+        // First line written for each main command still to be read; the
+        // output from its echo on shows whether mode changes were accepted
+        private final Deque<String> leads = new ArrayDeque<>();
+        // While set, commands only accumulate and replies are left unread
+        private boolean batching;
+        private CliMode mode = initialMode();
+        private String modeArg;
+        // Set when a reply shows the tracked mode may be wrong
+        private boolean modeLost;
 
         protected Commander() {
         }
 
+        /**
+         * Forget output left over from a previous shell; commands queued
+         * for the next one are kept
+         */
+        protected void reset() {
+            replyReader.clear();
+            mode = initialMode();
+            modeArg = null;
+            modeLost = false;
+        }
+
+        /**
+         * Current CLI mode as tracked from the commands sent so far
+         */
+        public CliMode mode() {
+            return mode;
+        }
+
+        /**
+         * Move the shell to the target mode before the commands queued after
+         * this call; nothing is sent if it is already there
+         *
+         * @param target mode to move to
+         */
+        public Commander mode(CliMode target) {
+            return mode(target, null);
+        }
+
+        /**
+         * Move the shell to the target mode before the commands queued after
+         * this call; nothing is sent if it is already there
+         *
+         * @param target mode to move to
+         * @param arg mode argument, such as the interface name
+         */
+        public Commander mode(CliMode target, String arg) {
+            // Resolved when sending, since the shell may be reopened in its
+            // initial mode in between
+            cmds.add(new ModeChange(target, arg));
+            return this;
+        }
+
+        /**
+         * Write the commands reaching a mode from the current one
+         *
+         * @return first line written, or null if already in the mode
+         */
+        private String writeModeChange(ModeChange change) {
+            List<String> lines = new ArrayList<>();
+            // Leave modes until the target is reachable from the current one
+            while (!change.target.isWithin(mode) || (mode == change.target && !Objects.equals(modeArg, change.arg))) {
+                lines.add("exit");
+                mode = mode.parent;
+                modeArg = null;
+            }
+            Deque<CliMode> path = new ArrayDeque<>();
+            for (CliMode m = change.target; m != mode; m = m.parent) {
+                path.push(m);
+            }
+            for (CliMode m : path) {
+                lines.add(enterCommand(m, change.arg));
+            }
+            mode = change.target;
+            modeArg = change.arg;
+            for (String line : lines) {
+                writer.print(line + "\n");
+            }
+            return lines.isEmpty() ? null : lines.get(0);
+        }
+
         public Commander addCmd(String ... cmd) {
             for (String c : cmd) {
                 cmds.add(c + "\n");
@@ -67,43 +374,131 @@ public class SshShellClient extends SshClient {
             for (String ctrl : ctrls) {
                 cmds.add(ctrl);
             }
-            cmds.add("# CMD_END #\n");
-            mainCmd = cmd;
+            cmds.add(ReplyReader.CMD_END_MARK + "\n");
+            mainCmds.add(cmd);
             return this;
         }
 
         public Commander sendCmd() throws Exception {
-            connectToServer();
-            for (String cmd : cmds) {
-                writer.print(cmd);
+            if (batching) {
+                return this;
+            }
+            PhaseTimer.mark(Phase.PARSE);
+            try {
+                if (modeLost && channel != null) {
+                    // A fresh shell starts in the initial mode, so the mode
+                    // is known again without guessing how far to exit
+                    channel.disconnect();
+                    modeLost = false;
+                }
+                try {
+                    connectToServer();
+                } catch (Exception e) {
+                    // Nothing queued was written, and earlier replies went
+                    // with the failed shell
+                    mainCmds.clear();
+                    leads.clear();
+                    throw e;
+                }
+                String lead = null;
+                for (Object cmd : cmds) {
+                    String line;
+                    if (cmd instanceof ModeChange) {
+                        line = writeModeChange((ModeChange) cmd);
+                    } else {
+                        line = (String) cmd;
+                        writer.print(line);
+                    }
+                    if (line == null) {
+                        continue;
+                    }
+                    if (ReplyReader.CMD_END_MARK.equals(line.trim())) {
+                        leads.add(lead);
+                        lead = null;
+                    } else if (lead == null) {
+                        lead = line.trim();
+                    }
+                }
                 writer.flush();
+                PhaseTimer.mark(Phase.WRITE);
+            } finally {
+                cmds.clear();
             }
-            cmds.clear();
             return this;
         }
 
+        /**
+         * Read until the end mark following the main command and return the
+         * output in between. Output read past the end mark is kept for the
+         * next call.
+         */
         public String recvCmd() {
-            int nbytes;
-            char[] buf = new char[RECV_BUF_SIZE];
-            String reply = "";
+            if (batching) {
+                return "";
+            }
+            try {
+                return readReply();
+            } finally {
+                releaseShell();
+            }
+        }
 
+        private String readReply() {
+            String mainCmd = mainCmds.poll();
+            String lead = leads.poll();
+            String reply = null;
+            boolean interrupted = false;
+            String failure = null;
             try {
-                while ((nbytes = reader.read(buf, 0, RECV_BUF_SIZE)) > -1) {
-                    reply += String.valueOf(buf, 0, nbytes);
-                    if (reply.contains(CMD_END_MARK)) {
-                        break;
-                    }
-                }
+                reply = replyReader.read(reader, mainCmd);
+            } catch (InterruptedIOException e) {
+                // The caller gave up on the command, e.g. at its deadline
+                interrupted = true;
             } catch (Exception e) {
-                e.printStackTrace();
+                log.warn("Failed to read the reply to \"{}\" from {}:{}", mainCmd, ip, port, e);
+                failure = e.getMessage();
             }
 
-            reply = reply.substring(reply.indexOf(mainCmd) + mainCmd.length());
-            reply = reply.substring(reply.indexOf("\n") + 1);
-            reply = reply.substring(0, reply.lastIndexOf(CMD_END_MARK));
-            reply = reply.substring(0, reply.lastIndexOf("\n")+ 1);
+            if (reply == null) {
+                // Neither the output nor the mode can be trusted any more, so
+                // the next command starts over on a fresh shell
+                channel.disconnect();
+                mainCmds.clear();
+                leads.clear();
+                reset();
+                if (interrupted) {
+                    // Not the device's fault, so the breaker is left alone
+                    throw new IllegalStateException("Interrupted before \"" + mainCmd + "\" completed");
+                }
+                String msg = "Shell closed before \"" + mainCmd + "\" completed";
+                if (failure != null) {
+                    msg += ": " + failure;
+                }
+                breaker.failure(msg);
+                throw new IllegalStateException(msg);
+            }
+            String rejected = rejectedSetup(replyReader.skipped(), lead, mainCmd);
+            if (rejected != null) {
+                // The main command ran in some other mode, if at all; the
+                // rejection is reported as part of its reply
+                modeLost = true;
+                reply = rejected + "\n" + reply;
+            } else if (mode != initialMode() && CliText.errorLine(reply) != null) {
+                // A rejected command may have been the one entering a mode
+                modeLost = true;
+            }
+            breaker.success();
             return reply;
         }
     }
 
+    private static class ModeChange {
+        private final CliMode target;
+        private final String arg;
+
+        private ModeChange(CliMode target, String arg) {
+            this.target = target;
+            this.arg = arg;
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package nctu.winlab.sshclient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Polls the state of every device in the background
+ *
+ * Each device is polled on its own schedule. The delay between two polls is
+ * the interval shifted by a random jitter, and the first polls are spread
+ * over one interval, so devices are not all queried at the same moment. The
+ * next poll of a device is only scheduled once the previous one finished.
+ * Polling is off until an interval is configured.
+ */
+public class StatePoller {
+    public static final long DEFAULT_INTERVAL = 0;
+    public static final double DEFAULT_JITTER = 0.2;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(groupedThreads("sshclient", "state-poller"));
+    private final Function<String, CompletableFuture<?>> poll;
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+    private List<String> devices = new ArrayList<>();
+    private volatile long interval = DEFAULT_INTERVAL;
+    private double jitter = DEFAULT_JITTER;
+    private long round;
+
+    /**
+     * @param poll polls one device; the returned future completes when done
+     */
+    public StatePoller(Function<String, CompletableFuture<?>> poll) {
+        this.poll = poll;
+    }
+
+    /**
+     * Change the polling schedule
+     *
+     * @param interval milliseconds between two polls of a device; 0 stops polling
+     * @param jitter fraction of the interval the delay is randomly shifted by
+     */
+    public synchronized void configure(long interval, double jitter) {
+        this.interval = interval;
+        this.jitter = Math.max(0, Math.min(1, jitter));
+        restart();
+    }
+
+    /**
+     * Whether devices are being polled, i.e. an interval is configured
+     */
+    public boolean isPolling() {
+        return interval > 0;
+    }
+
+    /**
+     * Replace the devices being polled
+     *
+     * @param devices device names
+     */
+    public synchronized void setDevices(Collection<String> devices) {
+        this.devices = new ArrayList<>(devices);
+        restart();
+    }
+
+    public synchronized void shutdown() {
+        round++;
+        scheduler.shutdownNow();
+    }
+
+    private void restart() {
+        round++;
+        tasks.forEach(task -> task.cancel(false));
+        tasks.clear();
+        if (interval <= 0) {
+            return;
+        }
+        for (String device : devices) {
+            schedule(device, round, ThreadLocalRandom.current().nextLong(interval));
+        }
+    }
+
+    private synchronized void schedule(String device, long round, long delay) {
+        if (round != this.round || scheduler.isShutdown()) {
+            return;
+        }
+        tasks.removeIf(ScheduledFuture::isDone);
+        tasks.add(scheduler.schedule(() -> run(device, round), delay, TimeUnit.MILLISECONDS));
+    }
+
+    private void run(String device, long round) {
+        CompletableFuture<?> done;
+        try {
+            done = poll.apply(device);
+        } catch (RuntimeException e) {
+            log.warn("Polling {} failed: {}", device, e.getMessage());
+            done = CompletableFuture.completedFuture(null);
+        }
+        done.whenComplete((v, e) -> schedule(device, round, nextDelay()));
+    }
+
+    private synchronized long nextDelay() {
+        double shift = jitter == 0 ? 0 : ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        return Math.max(1, Math.round(interval * (1 + shift)));
+    }
+}
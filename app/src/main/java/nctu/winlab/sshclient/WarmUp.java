@@ -0,0 +1,154 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Connects to devices ahead of their first request
+ *
+ * Devices are connected in parallel, at most a given number at a time. Each
+ * one goes through the command queue of its device, so a warm-up never
+ * interleaves with a request on the same shell. The readiness of a device
+ * is kept until it is warmed up again or leaves the config.
+ */
+public class WarmUp {
+    public static final int DEFAULT_PARALLELISM = 32;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Map<String, Readiness> readiness = new ConcurrentHashMap<>();
+    private Round round;
+
+    /**
+     * Connect to devices, taking over the devices a previous warm-up did
+     * not reach yet; the readiness of other devices still in clients is kept
+     *
+     * @param clients clients by device name
+     * @param targets names of the devices to connect to
+     * @param parallelism maximum number of devices connected at the same time
+     * @return future completed once every device is ready or failed
+     */
+    public synchronized CompletableFuture<Void> start(Map<String, SshClient> clients, List<String> targets,
+                                                      int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism should be positive");
+        }
+        stop();
+        readiness.keySet().retainAll(clients.keySet());
+        List<String> devices = new ArrayList<>(targets);
+        readiness.forEach((name, state) -> {
+            if (state.state.equals("pending") && !targets.contains(name)) {
+                devices.add(name);
+            }
+        });
+        Round current = new Round(parallelism);
+        round = current;
+
+        long begin = System.currentTimeMillis();
+        List<CompletableFuture<?>> connects = new ArrayList<>(devices.size());
+        List<Readiness> states = new ArrayList<>(devices.size());
+        for (String name : devices) {
+            SshClient client = clients.get(name);
+            Readiness state = new Readiness();
+            readiness.put(name, state);
+            states.add(state);
+            connects.add(client.commandQueue().submit(release -> CompletableFuture.runAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    if (current.cancelled) {
+                        state.finish("cancelled", start, "");
+                    } else {
+                        client.warmUp();
+                        state.finish("ready", start, "");
+                    }
+                } catch (Exception e) {
+                    state.finish("failed", start, String.valueOf(e.getMessage()));
+                } finally {
+                    release.run();
+                }
+            }, current.workers)).exceptionally(e -> {
+                state.finish("cancelled", System.nanoTime(), "");
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(connects.toArray(new CompletableFuture[0])).thenRun(() -> {
+            current.workers.shutdown();
+            if (current.cancelled) {
+                return;
+            }
+            long ready = states.stream().filter(state -> state.state.equals("ready")).count();
+            log.info("Warmed up {} of {} devices in {} ms", ready, devices.size(), System.currentTimeMillis() - begin);
+        });
+    }
+
+    /**
+     * Stop connecting and forget the readiness of every device; devices
+     * being connected finish their handshake
+     */
+    public synchronized void cancel() {
+        stop();
+        readiness.clear();
+    }
+
+    private void stop() {
+        if (round != null) {
+            // Queued connects still run to give their device slot back
+            round.cancelled = true;
+            round.workers.shutdown();
+            round = null;
+        }
+    }
+
+    /**
+     * Get the readiness of devices
+     *
+     * @param devices device names
+     * @return list of devices with name; state, which is cold if the device
+     *         was not warmed up, pending, ready, failed or cancelled; time
+     *         spent connecting in milliseconds; and the error message
+     */
+    public ArrayNode readiness(List<String> devices) {
+        ArrayNode node = mapper.createArrayNode();
+        for (String name : devices) {
+            Readiness state = readiness.get(name);
+            ObjectNode device = node.addObject();
+            device.put("name", name);
+            device.put("state", state == null ? "cold" : state.state);
+            device.put("connectMs", state == null ? 0 : state.connectMs);
+            device.put("msg", state == null ? "" : state.msg);
+        }
+        return node;
+    }
+
+    private static class Round {
+        private final ExecutorService workers;
+        private volatile boolean cancelled;
+
+        private Round(int parallelism) {
+            workers = Executors.newFixedThreadPool(parallelism, groupedThreads("sshclient", "warmup-%d"));
+        }
+    }
+
+    private static class Readiness {
+        private volatile String state = "pending";
+        private volatile double connectMs;
+        private volatile String msg = "";
+
+        private void finish(String state, long start, String msg) {
+            this.connectMs = (System.nanoTime() - start) / 1e6;
+            this.msg = msg;
+            this.state = state;
+        }
+    }
+}
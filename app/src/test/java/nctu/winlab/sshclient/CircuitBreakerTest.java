@@ -0,0 +1,150 @@
+package nctu.winlab.sshclient;
+
+import com.jcraft.jsch.JSchException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import nctu.winlab.sshclient.SshSessionPool.Lease;
+import nctu.winlab.sshclient.emulator.Behavior;
+import nctu.winlab.sshclient.emulator.EmulatedModel;
+import nctu.winlab.sshclient.emulator.Emulator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    @Test
+    public void opensAtThresholdOfConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker();
+
+        breaker.failure("refused");
+        breaker.failure("refused");
+        breaker.success();
+        breaker.failure("refused");
+        breaker.failure("refused");
+        assertFalse(breaker.isOpen());
+
+        breaker.failure("timeout");
+        assertTrue(breaker.isOpen());
+        assertEquals("open", breaker.stats().path("state").asText());
+        assertEquals(1, breaker.stats().path("trips").asLong());
+        assertEquals("Device unreachable after 3 consecutive failures, last: timeout", breaker.refusal());
+    }
+
+    @Test
+    public void zeroThresholdNeverOpens() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.failure("refused");
+        breaker.failure("refused");
+        breaker.failure("refused");
+        assertTrue(breaker.isOpen());
+
+        breaker.configure(0, 1000);
+        assertFalse(breaker.isOpen());
+        for (int i = 0; i < 10; i++) {
+            breaker.failure("refused");
+        }
+        assertFalse(breaker.isOpen());
+        assertEquals(13, breaker.stats().path("failures").asLong());
+    }
+
+    @Test
+    public void probesOneAtATimeAfterInterval() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.configure(1, 100);
+        assertFalse(breaker.startProbe());
+
+        breaker.failure("refused");
+        assertFalse(breaker.startProbe());
+
+        Thread.sleep(150);
+        assertTrue(breaker.startProbe());
+        assertFalse(breaker.startProbe());
+
+        // A failed probe keeps the breaker open until the next interval
+        breaker.failure("refused");
+        breaker.endProbe();
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.startProbe());
+        assertEquals(1, breaker.stats().path("trips").asLong());
+
+        Thread.sleep(150);
+        assertTrue(breaker.startProbe());
+        breaker.success();
+        breaker.endProbe();
+        assertFalse(breaker.isOpen());
+        assertFalse(breaker.startProbe());
+        assertEquals(0, breaker.stats().path("failures").asLong());
+    }
+
+    @Test
+    public void refusedConnectionCounts() throws Exception {
+        DefaultServerClient client = new DefaultServerClient("127.0.0.1", String.valueOf(closedPort()), "a", "a", "X");
+
+        assertFails(client);
+
+        assertEquals(1, client.breaker().stats().path("failures").asLong());
+    }
+
+    @Test
+    public void interruptedConnectionDoesNotCount() throws Exception {
+        DefaultServerClient client = new DefaultServerClient("127.0.0.1", String.valueOf(closedPort()), "a", "a", "X");
+
+        Thread.currentThread().interrupt();
+        try {
+            assertFails(client);
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertEquals(0, client.breaker().stats().path("failures").asLong());
+    }
+
+    @Test
+    public void fullPoolDoesNotCount() throws Exception {
+        SshSessionPool pool = new SshSessionPool();
+        pool.setMaxSessions(1);
+        try (Emulator emulator = new Emulator()) {
+            int port = closedPort();
+            emulator.add("srv", EmulatedModel.SERVER, port, Behavior.DEFAULT);
+            emulator.start();
+            DefaultServerClient holder = new DefaultServerClient(Emulator.DEFAULT_HOST, String.valueOf(port),
+                    Emulator.DEFAULT_USERNAME, Emulator.DEFAULT_PASSWORD, "SERVER");
+            holder.setSessionPool(pool);
+            Lease lease = holder.acquireSession();
+
+            DefaultServerClient waiter = new DefaultServerClient("127.0.0.1", String.valueOf(closedPort()), "a", "a",
+                                                                 "X");
+            waiter.setSessionPool(pool);
+            // Interrupted while waiting for the only slot
+            Thread.currentThread().interrupt();
+            try {
+                assertFails(waiter);
+            } finally {
+                Thread.interrupted();
+            }
+
+            assertEquals(0, waiter.breaker().stats().path("failures").asLong());
+            pool.release(lease);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertFails(SshClient client) {
+        try {
+            client.acquireSession();
+            fail("Connected to " + client.port);
+        } catch (JSchException e) {
+            // Expected
+        }
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
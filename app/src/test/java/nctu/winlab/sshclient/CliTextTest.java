@@ -0,0 +1,97 @@
+package nctu.winlab.sshclient;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CliTextTest {
+    private static final String[] EDGES = {
+        "", " ", "\r\n", "\n\n", "\r\r\n\n", "a", "  a  ", "a\r\nb", "a\nb\rc",
+        "\r\n\r\nfirst\r\n\r\n\r\nlast\r\n\r\n", "  1/0/1   access  \r\n\t2\t\tb \r\n",
+        "trailing blanks   \r\n   \r\n", "\tleading tab", "a\r\n\r\n\r\n",
+    };
+
+    @Test
+    public void linesMatchRegexSplit() {
+        for (String text : EDGES) {
+            assertArrayEquals(text, LegacyParsers.lines(text), CliText.lines(text));
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            String text = random(random, "a \t\r\n", 12);
+            assertArrayEquals(text, LegacyParsers.lines(text), CliText.lines(text));
+        }
+    }
+
+    @Test
+    public void fieldsMatchRegexSplitWithoutEmptyFields() {
+        for (String text : EDGES) {
+            assertArrayEquals(text, LegacyParsers.fields(text), CliText.fields(text));
+        }
+        Random random = new Random(2);
+        for (int i = 0; i < 20000; i++) {
+            String text = random(random, "ab \t", 12);
+            assertArrayEquals(text, LegacyParsers.fields(text), CliText.fields(text));
+        }
+    }
+
+    @Test
+    public void splitMatchesRegexAlternation() {
+        String[] texts = {
+            "", "Flow type \"IPv4\"\r\nMatch criteria: a\r\nActions: b\r\nStatus: c",
+            "Match criteria:Actions:Status:", "x Status:", "Status: only", "no separator",
+            "Actions:Actions: x",
+        };
+        for (String text : texts) {
+            assertArrayEquals(text, text.split("(Match criteria:|Actions:|Status:)"),
+                              CliText.split(text, "Match criteria:", "Actions:", "Status:"));
+            assertArrayEquals(text, text.split(" : "), CliText.split(text, " : "));
+        }
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            String text = random(random, "a :\r\n", 12);
+            assertArrayEquals(text, text.split("\r\n"), CliText.split(text, "\r\n"));
+            assertArrayEquals(text, text.split(" : "), CliText.split(text, " : "));
+        }
+    }
+
+    @Test
+    public void splitBeforeMatchesLookahead() {
+        String marker = "\r\nFlow type";
+        String[] texts = {
+            "", "x", marker, marker + " A" + marker + " B", "head" + marker + " A\r\n",
+            "Flow type A" + marker + " B" + marker, marker + marker,
+        };
+        for (String text : texts) {
+            assertArrayEquals(text, text.split("(?=\r\nFlow type)"), CliText.splitBefore(text, marker));
+        }
+    }
+
+    @Test
+    public void removeBreaksAndQuotesMatchesReplaceAll() {
+        String[] texts = {"", "\"IPv4\"\r\n", "a\rb\nc", "\r\r\n\n\"", "\"\"", "plain"};
+        for (String text : texts) {
+            assertEquals(text.replaceAll("\r\n|\"", ""), CliText.removeBreaksAndQuotes(text));
+        }
+    }
+
+    @Test
+    public void errorLineFindsRejectedCommand() {
+        assertEquals("% Invalid input detected at '^' marker.",
+                     CliText.errorLine("   ^\r\n% Invalid input detected at '^' marker.\r\n"));
+        assertEquals("Error: VLAN exists", CliText.errorLine("Command: create vlan\r\n\r\nError: VLAN exists\r\n"));
+        assertNull(CliText.errorLine("Success.\r\n"));
+    }
+
+    private static String random(Random random, String alphabet, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import nctu.winlab.sshclient.emulator.CliOutputs;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnSpecTest {
+    private static final int[] SIZES = {1, 10, 1000};
+
+    @Test
+    public void dxs5000TablesMatchLegacyOnFixtures() {
+        for (int n : SIZES) {
+            for (String text : variants(CliOutputs.expand("dxs5000-controllers.txt", n))) {
+                assertEquals(LegacyParsers.table(text, 3, "ip", "port", "mode", "role"),
+                             DXS5000Client.CONTROLLERS.parse(text));
+            }
+            for (String text : variants(CliOutputs.expand("dxs5000-tenant-local.txt", n))) {
+                assertEquals(LegacyParsers.table(text, 3, "vni", "mac", "port", "appIfIndex", "entryType"),
+                             DXS5000Client.TENANT_SYSTEMS_LOCAL.parse(text));
+            }
+            for (String text : variants(CliOutputs.expand("dxs5000-tenant-remote.txt", n))) {
+                assertEquals(LegacyParsers.table(text, 3, "vni", "mac", "vtep", "appIfIndex", "entryType"),
+                             DXS5000Client.TENANT_SYSTEMS_REMOTE.parse(text));
+            }
+            for (String text : variants(CliOutputs.expand("dxs5000-vlan.txt", n))) {
+                ArrayNode vlans = DXS5000Client.VLANS.parse(text);
+                assertEquals(LegacyParsers.table(text, 3, "id", "name", "type"), vlans);
+            }
+        }
+    }
+
+    @Test
+    public void dgs3630ControllersMatchLegacyOnFixture() {
+        String text = CliOutputs.expand("dgs3630-openflow.txt", 2);
+        for (String variant : variants(text)) {
+            ArrayNode controllers = DGS3630Client.CONTROLLERS.parse(variant);
+            assertEquals(LegacyParsers.dgs3630Controllers(variant), controllers);
+            assertEquals(2, controllers.size());
+        }
+    }
+
+    @Test
+    public void dgs3630IndentedRowNoLongerShiftsFields() {
+        // The old split("[ \t]+") gave an indented row a leading empty
+        // field, which moved every value one column to the right
+        String text = CliOutputs.expand("dgs3630-openflow.txt", 2)
+                .replace("192.168.10.1     6653", "  192.168.10.1   6653");
+
+        ArrayNode controllers = DGS3630Client.CONTROLLERS.parse(text);
+
+        assertEquals("192.168.10.1", controllers.get(0).path("ip").asText());
+        assertEquals("6653", controllers.get(0).path("port").asText());
+        assertEquals("MASTER", controllers.get(0).path("role").asText());
+        assertEquals("", LegacyParsers.dgs3630Controllers(text).get(0).path("ip").asText());
+    }
+
+    @Test
+    public void dgs3000VlansMatchLegacyOnFixture() {
+        for (int n : SIZES) {
+            for (String text : variants(CliOutputs.expand("dgs3000-vlan.txt", n))) {
+                ArrayNode vlans = DGS3000Client.VLANS.parse(text);
+                assertEquals(LegacyParsers.dgs3000Vlans(text), vlans);
+                assertEquals(n, vlans.size());
+            }
+        }
+    }
+
+    @Test
+    public void rowMissingFieldsIsSkipped() {
+        String text = "\r\nVLAN ID VLAN Name Type\r\n------- --------- ----\r\n1 default Default\r\n2 v2\r\n"
+                + "   \r\n3 v3 Static\r\n";
+
+        ArrayNode vlans = DXS5000Client.VLANS.parse(text);
+
+        // Only the short rows are dropped; the old parser failed the table
+        assertEquals(2, vlans.size());
+        assertEquals("3", vlans.get(1).path("id").asText());
+        assertTrue(legacyFails(() -> LegacyParsers.table(text, 3, "id", "name", "type")));
+    }
+
+    @Test
+    public void blockCutShortIsSkipped() {
+        String text = "\r\nCommand: show vlan\r\n\r\nVID             : 1          VLAN Name     : default\r\n"
+                + "VLAN Type       : Static     Advertisement : Enabled\r\n"
+                + "VID             : 2          VLAN Name     : v2\r\n";
+
+        ArrayNode vlans = DGS3000Client.VLANS.parse(text);
+
+        assertEquals(1, vlans.size());
+        assertEquals("Static", vlans.get(0).path("type").asText());
+        assertTrue(legacyFails(() -> LegacyParsers.dgs3000Vlans(text)));
+    }
+
+    @Test
+    public void emptyOutputHasNoRows() {
+        for (String text : new String[] {"", "\r\n", "\r\n\r\n\r\n\r\n"}) {
+            assertEquals(0, DXS5000Client.VLANS.parse(text).size());
+            assertEquals(0, DGS3000Client.VLANS.parse(text).size());
+        }
+    }
+
+    // The output as sent, with bare line feeds, and with blank lines and
+    // trailing blanks added
+    private static String[] variants(String text) {
+        return new String[] {
+            text,
+            text.replace("\r\n", "\n"),
+            text.replace("\r\n", "  \r\n\r\n"),
+        };
+    }
+
+    private static boolean legacyFails(Runnable parse) {
+        try {
+            parse.run();
+            return false;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return true;
+        }
+    }
+}
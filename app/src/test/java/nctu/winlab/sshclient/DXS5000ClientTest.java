@@ -0,0 +1,74 @@
+package nctu.winlab.sshclient;
+
+import java.util.Random;
+import nctu.winlab.sshclient.emulator.CliOutputs;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DXS5000ClientTest {
+    private final DXS5000Client dxs = new DXS5000Client("127.0.0.1", "22", "test", "test", "DXS_5000");
+
+    @Test
+    public void flowsMatchLegacyOnFixture() {
+        for (int n : new int[] {1, 10, 1000}) {
+            String flows = CliOutputs.expand("dxs5000-flows.txt", n);
+            assertEquals(LegacyParsers.dxs5000Flows(flows), dxs.parseFlows(flows));
+            assertEquals(n, dxs.parseFlows(flows).size());
+        }
+    }
+
+    @Test
+    public void groupsMatchLegacyOnFixture() {
+        for (int n : new int[] {1, 10, 1000}) {
+            String groups = CliOutputs.expand("dxs5000-groups.txt", n);
+            assertEquals(LegacyParsers.dxs5000Groups(groups), dxs.processGroups(groups));
+            String bare = groups.replace("\r\n", "\n");
+            assertEquals(LegacyParsers.dxs5000Groups(bare), dxs.processGroups(bare));
+        }
+    }
+
+    @Test
+    public void removeLabelMatchesRegex() {
+        String[] patterns = {
+            "", " ", "Ingress port", "1/0/1", "1/0/1 VLAN ID", "00:11:22:33:44:55", "00:11:22:33:44:55 Dest MAC",
+            "aa:bb:cc:dd:ee:ff", "ab:cd:ef Src", "NA", "  Priority 10  ", "IPv4 Dst", "12:ab:CD TTL\r",
+            "Hard timeout: 0", "_a:bc:de fg", "\t\tTab label",
+        };
+        for (String pat : patterns) {
+            assertEquals(pat, LegacyParsers.removeLabel(pat), DXS5000Client.removeLabel(pat));
+        }
+        Random random = new Random(6);
+        for (int i = 0; i < 50000; i++) {
+            String pat = random(random, "ab1:_ \t", 16);
+            assertEquals(pat, LegacyParsers.removeLabel(pat), DXS5000Client.removeLabel(pat));
+        }
+    }
+
+    @Test
+    public void endsMacTripletMatchesLookbehind() {
+        String[] patterns = {"00:11:22", "x00:11:22", "00:11:2", "0:11:22", "aa:bb:cc:dd:ee:ff", "a_:b_:c_", "00-11-22"};
+        for (String pat : patterns) {
+            for (int end = 0; end <= pat.length(); end++) {
+                assertEquals(pat + "@" + end, LegacyParsers.endsMacTriplet(pat, end),
+                             DXS5000Client.endsMacTriplet(pat, end));
+            }
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            String pat = random(random, "a1:_ ", 12);
+            int end = random.nextInt(pat.length() + 1);
+            assertEquals(pat + "@" + end, LegacyParsers.endsMacTriplet(pat, end),
+                         DXS5000Client.endsMacTriplet(pat, end));
+        }
+    }
+
+    private static String random(Random random, String alphabet, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package nctu.winlab.sshclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceCommandQueueTest {
+
+    @Test
+    public void permitsLimitRunningRequests() {
+        DeviceCommandQueue queue = new DeviceCommandQueue(2);
+        List<Runnable> releases = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            queue.submit(release -> {
+                releases.add(release);
+                return new CompletableFuture<>();
+            });
+        }
+
+        assertEquals(2, queue.running());
+        assertEquals(3, queue.depth());
+
+        releases.get(0).run();
+        assertEquals(2, queue.running());
+        assertEquals(2, queue.depth());
+        assertEquals(1, queue.completed());
+
+        // Raising the permits starts waiting requests at once
+        queue.setPermits(4);
+        assertEquals(4, queue.running());
+        assertEquals(0, queue.depth());
+    }
+
+    @Test
+    public void requestsStartInArrivalOrder() {
+        DeviceCommandQueue queue = new DeviceCommandQueue(1);
+        List<Integer> started = new ArrayList<>();
+        List<Runnable> releases = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int id = i;
+            queue.submit(release -> {
+                started.add(id);
+                releases.add(release);
+                return CompletableFuture.completedFuture(id);
+            });
+        }
+
+        for (int i = 0; i < 4; i++) {
+            releases.get(i).run();
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3), started);
+        assertEquals(4, queue.completed());
+    }
+
+    @Test
+    public void throwingTaskGivesItsSlotBack() {
+        DeviceCommandQueue queue = new DeviceCommandQueue(1);
+        boolean[] nextStarted = {false};
+
+        CompletableFuture<String> failed = queue.submit(release -> {
+            throw new IllegalStateException("boom");
+        });
+        queue.submit(release -> {
+            nextStarted[0] = true;
+            release.run();
+            return CompletableFuture.completedFuture("ok");
+        });
+
+        assertTrue(failed.isCompletedExceptionally());
+        try {
+            failed.join();
+        } catch (CompletionException e) {
+            assertEquals("boom", e.getCause().getMessage());
+        }
+        assertTrue(nextStarted[0]);
+        assertEquals(0, queue.running());
+        assertEquals(2, queue.completed());
+    }
+
+    @Test
+    public void timedOutTaskKeepsDeviceUntilReleased() {
+        DeviceCommandQueue queue = new DeviceCommandQueue(1);
+        Runnable[] held = new Runnable[1];
+        boolean[] nextStarted = {false};
+
+        // Answered by a timeout reply while the device is still busy
+        CompletableFuture<String> timedOut = queue.submit(release -> {
+            held[0] = release;
+            return CompletableFuture.completedFuture("timed out");
+        });
+        queue.submit(release -> {
+            nextStarted[0] = true;
+            return new CompletableFuture<>();
+        });
+
+        assertEquals("timed out", timedOut.join());
+        assertFalse(nextStarted[0]);
+        assertEquals(1, queue.depth());
+
+        held[0].run();
+        // Releasing again must not free a slot held by the next request
+        held[0].run();
+        assertTrue(nextStarted[0]);
+        assertEquals(1, queue.running());
+        assertEquals(1, queue.completed());
+    }
+}
@@ -0,0 +1,117 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import nctu.winlab.sshclient.emulator.Behavior;
+import nctu.winlab.sshclient.emulator.EmulatedDevice;
+import nctu.winlab.sshclient.emulator.EmulatedModel;
+import nctu.winlab.sshclient.emulator.Emulator;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The drivers against emulated devices over real SSH sessions, all queried
+ * at once, with paged output and reply latency
+ */
+public class EmulatedFleetTest {
+    private static final int DEVICES_PER_MODEL = 8;
+    private static final int ENTRIES = 120;
+    private static final Behavior BEHAVIOR =
+            Behavior.builder().entries(ENTRIES).latency(10).jitter(0.5).pageLines(40).build();
+
+    private static Emulator emulator;
+    private static FanOutExecutor fanOut;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        emulator = new Emulator();
+        for (EmulatedModel model : new EmulatedModel[] {
+                EmulatedModel.DXS_5000, EmulatedModel.DGS_3000, EmulatedModel.SERVER}) {
+            for (int i = 0; i < DEVICES_PER_MODEL; i++) {
+                emulator.add(model + "-" + i, model, freePort(), BEHAVIOR);
+            }
+        }
+        emulator.start();
+        fanOut = new FanOutExecutor(DEVICES_PER_MODEL * 3, 60000);
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        fanOut.shutdown();
+        emulator.close();
+    }
+
+    @Test
+    public void everyDeviceAnswersInFull() throws Exception {
+        List<CompletableFuture<ObjectNode>> replies = new ArrayList<>();
+        List<EmulatedDevice> devices = new ArrayList<>();
+        for (Map.Entry<Integer, EmulatedDevice> e : emulator.devices().entrySet()) {
+            EmulatedDevice device = e.getValue();
+            String port = String.valueOf(e.getKey());
+            devices.add(device);
+            replies.add(fanOut.submit(device.name(), name -> query(device, port)));
+        }
+
+        for (int i = 0; i < devices.size(); i++) {
+            EmulatedDevice device = devices.get(i);
+            ObjectNode reply = replies.get(i).get(60, TimeUnit.SECONDS);
+            assertFalse(device.name() + ": " + reply, reply.path("error").asBoolean());
+            switch (device.model()) {
+                case DXS_5000:
+                    assertEquals(ENTRIES, reply.path("flows").size());
+                    assertEquals(ENTRIES, reply.path("groups").size());
+                    assertTrue(reply.path("flows").get(ENTRIES - 1).path("matches").size() > 0);
+                    break;
+                case DGS_3000:
+                    assertEquals(ENTRIES, reply.path("vlans").size());
+                    assertEquals("Static", reply.path("vlans").get(0).path("type").asText());
+                    break;
+                default:
+                    assertEquals(ENTRIES + 1, reply.path("routes").asText().split("\n").length);
+                    assertTrue(reply.path("uname").asText().contains(device.name()));
+                    break;
+            }
+        }
+    }
+
+    private static ObjectNode query(EmulatedDevice device, String port) {
+        String user = device.username();
+        String pass = device.password();
+        String model = device.model().name();
+        ObjectNode reply;
+        switch (device.model()) {
+            case DXS_5000:
+                DXS5000Client dxs = new DXS5000Client(Emulator.DEFAULT_HOST, port, user, pass, model);
+                reply = dxs.getFlows();
+                reply.set("groups", dxs.getGroups().path("groups"));
+                return reply;
+            case DGS_3000:
+                return new DGS3000Client(Emulator.DEFAULT_HOST, port, user, pass, model).showVlan();
+            default:
+                DefaultServerClient server = new DefaultServerClient(Emulator.DEFAULT_HOST, port, user, pass, model);
+                reply = server.execCommand("ip route");
+                reply.set("routes", reply.remove("raw"));
+                reply.set("uname", server.execCommand("uname -a").path("raw"));
+                return reply;
+        }
+    }
+
+    // Ports the OS hands out as free; the emulator routes sessions by the
+    // port they arrive on, so each device needs its port up front
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
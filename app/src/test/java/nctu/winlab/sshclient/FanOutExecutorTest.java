@@ -0,0 +1,122 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Test;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FanOutExecutorTest {
+    private FanOutExecutor fanOut;
+
+    @After
+    public void tearDown() {
+        if (fanOut != null) {
+            fanOut.shutdown();
+        }
+    }
+
+    @Test
+    public void timeoutReplyCompletesFutureAndInterruptsWorker() throws Exception {
+        fanOut = new FanOutExecutor(1, 100);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        ObjectNode reply = fanOut.submit("d1", name -> {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return ok();
+        }).get(2, TimeUnit.SECONDS);
+
+        assertTrue(reply.path("error").asBoolean());
+        assertTrue(reply.path("timedOut").asBoolean());
+        assertEquals("Timed out after 100 ms", reply.path("msg").asText());
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void lateReplyDoesNotReplaceTimeoutReply() throws Exception {
+        fanOut = new FanOutExecutor(1, 50);
+        CountDownLatch done = new CountDownLatch(1);
+
+        ObjectNode reply = fanOut.submit("d1", name -> {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                // Answer anyway, as a driver which swallows the interrupt would
+            }
+            done.countDown();
+            return ok();
+        }).get(2, TimeUnit.SECONDS);
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertTrue(reply.path("timedOut").asBoolean());
+    }
+
+    @Test
+    public void interruptIsClearedBeforeNextTask() throws Exception {
+        fanOut = new FanOutExecutor(1, 50);
+        AtomicBoolean interruptedOnNext = new AtomicBoolean(true);
+
+        // Keeps running after the interrupt and leaves the flag set
+        fanOut.submit("d1", name -> {
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (!Thread.currentThread().isInterrupted() && System.nanoTime() < end) {
+                Thread.yield();
+            }
+            return ok();
+        });
+        ObjectNode reply = fanOut.submit("d2", name -> {
+            interruptedOnNext.set(Thread.currentThread().isInterrupted());
+            return ok();
+        }).get(5, TimeUnit.SECONDS);
+
+        assertFalse(reply.path("error").asBoolean());
+        assertFalse(interruptedOnNext.get());
+    }
+
+    @Test
+    public void requestDeadlineCutsDeviceTimeoutShort() throws Exception {
+        fanOut = new FanOutExecutor(1, 10000);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+
+        ObjectNode reply = fanOut.submit("d1", name -> {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ok();
+        }, deadline).get(2, TimeUnit.SECONDS);
+
+        assertTrue(reply.path("timedOut").asBoolean());
+        assertEquals(FanOutExecutor.DEADLINE_PASSED, reply.path("msg").asText());
+    }
+
+    @Test
+    public void exceptionBecomesErrorReply() throws Exception {
+        fanOut = new FanOutExecutor(1, 1000);
+
+        ObjectNode reply = fanOut.submit("d1", name -> {
+            throw new IllegalStateException("boom");
+        }).get(2, TimeUnit.SECONDS);
+
+        assertTrue(reply.path("error").asBoolean());
+        assertFalse(reply.has("timedOut"));
+        assertEquals("boom", reply.path("msg").asText());
+    }
+
+    private static ObjectNode ok() {
+        ObjectNode reply = mapper.createObjectNode();
+        reply.put("error", false);
+        return reply;
+    }
+}
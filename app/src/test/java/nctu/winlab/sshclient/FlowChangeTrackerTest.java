@@ -0,0 +1,74 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+import static org.junit.Assert.assertEquals;
+
+public class FlowChangeTrackerTest {
+
+    @Test
+    public void flowsSharingKeyAreNotReportedAsChanged() {
+        FlowChangeTracker tracker = new FlowChangeTracker();
+        tracker.updateFlows(flows(flow("10", "1/0/1"), flow("10", "1/0/2")));
+        long seen = tracker.version();
+
+        // Same flows, listed in the other order
+        tracker.updateFlows(flows(flow("10", "1/0/2"), flow("10", "1/0/1")));
+
+        assertEquals(seen, tracker.version());
+        ObjectNode changes = tracker.changesSince(seen).path("flows").deepCopy();
+        assertEquals(0, changes.path("added").size() + changes.path("removed").size()
+                + changes.path("modified").size());
+    }
+
+    @Test
+    public void modifiedFlowSharingKeyIsReportedOnce() {
+        FlowChangeTracker tracker = new FlowChangeTracker();
+        tracker.updateFlows(flows(flow("10", "1/0/1"), flow("10", "1/0/2")));
+        long seen = tracker.version();
+
+        tracker.updateFlows(flows(flow("10", "1/0/1"), flow("10", "1/0/3")));
+
+        ObjectNode changes = tracker.changesSince(seen).path("flows").deepCopy();
+        assertEquals(1, changes.path("modified").size());
+        assertEquals("1/0/3", changes.path("modified").get(0).path("actions").path("Output port").asText());
+        assertEquals(0, changes.path("added").size());
+        assertEquals(0, changes.path("removed").size());
+    }
+
+    @Test
+    public void flowAddedAndRemovedSinceReaderIsLeftOut() {
+        FlowChangeTracker tracker = new FlowChangeTracker();
+        tracker.updateFlows(flows(flow("10", "1/0/1")));
+        long seen = tracker.version();
+
+        tracker.updateFlows(flows(flow("10", "1/0/1"), flow("20", "1/0/2")));
+        tracker.updateFlows(flows(flow("10", "1/0/1")));
+
+        ObjectNode changes = tracker.changesSince(seen).path("flows").deepCopy();
+        assertEquals(0, changes.path("added").size());
+        assertEquals(0, changes.path("removed").size());
+        // A reader which saw the flow still learns it was removed
+        assertEquals(1, tracker.changesSince(seen + 1).path("flows").path("removed").size());
+    }
+
+    private static ArrayNode flows(ObjectNode... flows) {
+        ArrayNode list = mapper.createArrayNode();
+        for (ObjectNode flow : flows) {
+            list.add(flow);
+        }
+        return list;
+    }
+
+    private static ObjectNode flow(String priority, String output) {
+        ObjectNode flow = mapper.createObjectNode();
+        flow.put("type", "ACL");
+        flow.putObject("matches").put("Priority", priority).put("In port", "1/0/9");
+        flow.putObject("actions").put("Output port", output);
+        flow.putObject("status").put("Packet count", "0");
+        return flow;
+    }
+}
@@ -0,0 +1,70 @@
+package nctu.winlab.sshclient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyValueSpecTest {
+    private static final Pattern COUNTER = Pattern.compile("([a-zA-Z\\s]+):[\\s]+(\\d+)");
+    private static final Pattern BUCKET =
+            Pattern.compile("([a-zA-Z\\s]+|Output port):?[\\s]+(NA|\\w{2}(:\\w{2}){5}|\\d+(\\/\\d+)?)");
+    private static final String[] LINES = {
+        "", "   ", "Reference Count : 2   Bucket Count: 3", "Reference Count :2",
+        "Output port: 1/0/3   Dest MAC  00:11:22:33:44:55", "Output port 12", "Output port:",
+        "Watch Port: NA   Watch Group : NA", "Src MAC 00:11:22:33:44", "Bucket Index : 1   VLAN ID : 10",
+        "  Label\t:\t7  ", "trailing 5/", "a:b 1", "MAC aa:bb:cc:dd:ee:ff\r",
+    };
+
+    @Test
+    public void groupCountersMatchRegex() {
+        for (String line : LINES) {
+            assertEquals(line, regex(COUNTER, line), pairs(DXS5000Client.GROUP_COUNTERS, line));
+        }
+        Random random = new Random(4);
+        for (int i = 0; i < 20000; i++) {
+            String line = random(random, "ab :1\t", 14);
+            assertEquals(line, regex(COUNTER, line), pairs(DXS5000Client.GROUP_COUNTERS, line));
+        }
+    }
+
+    @Test
+    public void bucketFieldsMatchRegex() {
+        for (String line : LINES) {
+            assertEquals(line, regex(BUCKET, line), pairs(DXS5000Client.BUCKET_FIELDS, line));
+        }
+        Random random = new Random(5);
+        for (int i = 0; i < 50000; i++) {
+            String line = random(random, "aN :1/_\t", 24);
+            assertEquals(line, regex(BUCKET, line), pairs(DXS5000Client.BUCKET_FIELDS, line));
+        }
+    }
+
+    private static List<String> regex(Pattern pattern, String line) {
+        List<String> pairs = new ArrayList<>();
+        Matcher matcher = pattern.matcher(line);
+        while (matcher.find()) {
+            pairs.add(matcher.group(1).strip() + "=" + matcher.group(2).strip());
+        }
+        return pairs;
+    }
+
+    private static List<String> pairs(KeyValueSpec spec, String line) {
+        List<String> pairs = new ArrayList<>();
+        spec.forEach(line, (key, value) -> pairs.add(key + "=" + value));
+        return pairs;
+    }
+
+    private static String random(Random random, String alphabet, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,121 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long US = TimeUnit.MICROSECONDS.toNanos(1);
+
+    @Test
+    public void smallLatenciesHaveBucketsOfTheirOwn() {
+        for (long micros = 0; micros < 32; micros++) {
+            assertEquals(micros, LatencyHistogram.index(micros));
+            assertEquals(micros, LatencyHistogram.highestValue((int) micros));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguousAndWithinOneSixteenth() {
+        long previousHighest = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long highest = LatencyHistogram.highestValue(i);
+            long lowest = previousHighest + 1;
+            assertEquals(i, LatencyHistogram.index(lowest));
+            assertEquals(i, LatencyHistogram.index(highest));
+            assertTrue("bucket " + i, highest - lowest <= Math.max(0, lowest / 16));
+            previousHighest = highest;
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(LatencyHistogram.MAX_MICROS));
+        assertEquals(LatencyHistogram.MAX_MICROS, previousHighest);
+    }
+
+    @Test
+    public void percentilesMatchSortedLatencies() {
+        Random random = new Random(19);
+        long[] micros = new long[100000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < micros.length; i++) {
+            // Log-uniform between 10us and 10s
+            micros[i] = (long) Math.pow(10, 1 + 6 * random.nextDouble());
+            histogram.record(micros[i] * US, false);
+        }
+        Arrays.sort(micros);
+
+        for (double p : new double[] {1, 50, 90, 99, 99.9, 100}) {
+            long exact = micros[(int) Math.ceil(p / 100 * micros.length) - 1];
+            double reported = histogram.percentile(p) * 1000;
+            assertTrue(p + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(p + ": " + reported + " vs " + exact, reported <= exact + exact / 16.0);
+        }
+        assertEquals(micros[micros.length - 1] / 1000.0, histogram.percentile(100), 0);
+    }
+
+    @Test
+    public void percentileIsCappedByTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000 * US, false);
+
+        // The bucket of 1000us reaches up to 1023us
+        assertEquals(1.0, histogram.percentile(50), 0);
+        assertEquals(1.0, histogram.percentile(99.9), 0);
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        ObjectNode stats = new LatencyHistogram().stats();
+
+        assertEquals(0, stats.path("count").asLong());
+        assertEquals(0.0, stats.path("p99Ms").asDouble(), 0);
+        assertEquals(0.0, stats.path("meanMs").asDouble(), 0);
+    }
+
+    @Test
+    public void outOfRangeLatenciesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5 * MS, false);
+        histogram.record(Long.MAX_VALUE, true);
+
+        assertEquals(2, histogram.count());
+        assertEquals(1, histogram.errors());
+        assertEquals(0.0, histogram.percentile(50), 0);
+        assertEquals(LatencyHistogram.MAX_MICROS / 1000.0, histogram.percentile(100), 0);
+    }
+
+    @Test
+    public void addMergesCountsAndMaximum() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(2 * MS, false);
+        b.record(8 * MS, true);
+        b.record(4 * MS, false);
+
+        a.add(b);
+
+        ObjectNode stats = a.stats();
+        assertEquals(3, stats.path("count").asLong());
+        assertEquals(1, stats.path("errors").asLong());
+        assertEquals(8.0, stats.path("maxMs").asDouble(), 0);
+        assertEquals(14.0 / 3, stats.path("meanMs").asDouble(), 1e-9);
+        assertEquals(4.0, a.percentile(50), 4.0 / 16);
+    }
+
+    @Test
+    public void devicesWithoutModelAreTotalledUnderPlaceholder() {
+        LatencyMetrics metrics = new LatencyMetrics();
+        metrics.record("s1", null, "getFlows", 3 * MS, false);
+        metrics.record("s2", "DXS_5000", "getFlows", 5 * MS, false);
+
+        ObjectNode stats = metrics.stats();
+
+        assertEquals(1, stats.path("models").path(LatencyMetrics.UNKNOWN_MODEL).path("getFlows").path("count").asLong());
+        assertEquals(1, stats.path("models").path("DXS_5000").path("getFlows").path("count").asLong());
+        assertEquals(2, stats.path("operations").path("getFlows").path("count").asLong());
+    }
+}
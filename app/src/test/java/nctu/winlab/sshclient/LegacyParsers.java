@@ -0,0 +1,176 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+
+/**
+ * The regular expression and String.split parsing the drivers used before
+ * CliText, ColumnSpec and KeyValueSpec, kept as the reference the
+ * replacements are compared with
+ */
+final class LegacyParsers {
+    private LegacyParsers() {
+    }
+
+    static String[] lines(String text) {
+        return text.split("[\r\n]+");
+    }
+
+    static String[] fields(String line) {
+        return Stream.of(line.split("[ \t]+")).filter(i -> !i.isEmpty()).toArray(String[]::new);
+    }
+
+    static String removeLabel(String pat) {
+        return pat.replaceFirst("([a-zA-Z\\s]+)(?<!\\w{2}:\\w{2}:\\w{2})", "");
+    }
+
+    static boolean endsMacTriplet(String pat, int end) {
+        return Pattern.compile("\\w{2}:\\w{2}:\\w{2}$").matcher(pat.substring(0, end)).find();
+    }
+
+    /**
+     * Rows of a one line per record table, named by columns; a row lacking a
+     * field fails the whole table, as it did before
+     */
+    static ArrayNode table(String text, int header, String... columns) {
+        ArrayNode records = mapper.createArrayNode();
+        String[] reply = lines(text);
+        for (String row : Arrays.copyOfRange(reply, header, reply.length)) {
+            String[] infos = fields(row);
+            ObjectNode c = mapper.createObjectNode();
+            for (int i = 0; i < columns.length; i++) {
+                c.put(columns[i], infos[i]);
+            }
+            records.add(c);
+        }
+        return records;
+    }
+
+    static ArrayNode dgs3630Controllers(String text) {
+        ArrayNode records = mapper.createArrayNode();
+        String[] reply = lines(text);
+        for (String controller : Arrays.copyOfRange(reply, 11, reply.length - 1)) {
+            String[] infos = controller.split("[ \t]+");
+            ObjectNode c = mapper.createObjectNode();
+            c.put("ip", infos[0]);
+            c.put("port", infos[1]);
+            c.put("mode", infos[2]);
+            c.put("role", infos[3]);
+            records.add(c);
+        }
+        return records;
+    }
+
+    static ArrayNode dgs3000Vlans(String text) {
+        ArrayNode records = mapper.createArrayNode();
+        String[] reply = lines(text);
+        String[] lines = Arrays.copyOfRange(reply, 2, reply.length);
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].startsWith("VID")) {
+                String[] infos1 = fields(lines[i]);
+                String[] infos2 = fields(lines[i + 1]);
+                ObjectNode c = mapper.createObjectNode();
+                c.put("id", infos1[2]);
+                c.put("name", infos1[5]);
+                c.put("type", infos2[3]);
+                records.add(c);
+            }
+        }
+        return records;
+    }
+
+    static ArrayNode dxs5000Flows(String reply) {
+        ArrayNode flowList = mapper.createArrayNode();
+        for (String flow : reply.split("(?=\r\nFlow type)")) {
+            ObjectNode flowNode = mapper.createObjectNode();
+            String[] items = flow.split("(Match criteria:|Actions:|Status:)");
+            flowNode.put("type", items[0].replace("Flow type ", "").replace("DOT", ".").replaceAll("\r\n|\"", ""));
+            flowNode.set("matches", keyValue(items[1]));
+            flowNode.set("actions", keyValue(items[2]));
+            flowNode.set("status", keyValue(items[3]));
+            flowList.add(flowNode);
+        }
+        return flowList;
+    }
+
+    private static ObjectNode keyValue(String raw) {
+        ObjectNode dictNode = mapper.createObjectNode();
+        for (String line : raw.split("\r\n")) {
+            String[] patterns = line.split(" : ");
+            if ((line = line.strip()).length() == 0) {
+                continue;
+            }
+            for (String pat : patterns) {
+                String value = removeLabel(pat);
+                String key = pat.replace(value, "").strip();
+                value = value.replace(":", "").strip();
+                dictNode.put(key, value);
+            }
+        }
+        return dictNode;
+    }
+
+    static ArrayNode dxs5000Groups(String raw) {
+        ObjectNode group = null;
+        ObjectNode bucket = null;
+        ArrayNode groups = mapper.createArrayNode();
+        ArrayNode buckets = null;
+        String[] rawGroups = lines(raw);
+        int state = -1;
+        for (String line : Arrays.copyOfRange(rawGroups, 7, rawGroups.length)) {
+            Matcher matcher;
+            if (line.indexOf("Group Id") == 0) {
+                state = 0;
+                group = mapper.createObjectNode();
+                groups.add(group);
+                buckets = group.putArray("buckets");
+                matcher = Pattern.compile("(\\d+)").matcher(line);
+                if (!matcher.find()) {
+                    continue;
+                }
+                group.put("id", Integer.parseInt(matcher.group(1).strip()));
+                continue;
+            }
+            if (line.contains("Group Type")) {
+                state = 1;
+                matcher = Pattern.compile("Group Type : (.*)").matcher(line);
+                if (!matcher.find()) {
+                    continue;
+                }
+                group.put("type", matcher.group(1).strip());
+                continue;
+            }
+            if (line.contains("Bucket entry list for group")) {
+                state = 2;
+                bucket = mapper.createObjectNode();
+                buckets.add(bucket);
+                continue;
+            }
+            if (state == 1) {
+                matcher = Pattern.compile("([a-zA-Z\\s]+):[\\s]+(\\d+)").matcher(line);
+                while (matcher.find()) {
+                    group.put(matcher.group(1).strip(), matcher.group(2).strip());
+                }
+                continue;
+            }
+            if (state != 2) {
+                continue;
+            }
+            matcher = Pattern.compile("([a-zA-Z\\s]+|Output port):?[\\s]+(NA|\\w{2}(:\\w{2}){5}|\\d+(\\/\\d+)?)")
+                    .matcher(line);
+            while (matcher.find()) {
+                String key = matcher.group(1).strip();
+                if (!key.contains("Index")) {
+                    bucket.put(key, matcher.group(2).strip());
+                }
+            }
+        }
+        return groups;
+    }
+}
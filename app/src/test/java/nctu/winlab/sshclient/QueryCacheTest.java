@@ -0,0 +1,110 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class QueryCacheTest {
+
+    @Test
+    public void replyExpiresAfterTtl() throws Exception {
+        QueryCache cache = new QueryCache(50, 16);
+        ObjectNode reply = reply("a");
+        cache.put("d1", "flows", cache.generation("d1"), reply);
+
+        assertSame(reply, cache.get("d1", "flows"));
+        Thread.sleep(120);
+        assertNull(cache.get("d1", "flows"));
+        assertEquals(0, cache.stats().path("size").asInt());
+    }
+
+    @Test
+    public void zeroTtlCachesNothing() {
+        QueryCache cache = new QueryCache(QueryCache.DEFAULT_TTL, 16);
+        cache.put("d1", "flows", cache.generation("d1"), reply("a"));
+
+        assertNull(cache.get("d1", "flows"));
+        assertEquals(0, cache.stats().path("size").asInt());
+    }
+
+    @Test
+    public void leastRecentlyUsedReplyIsEvicted() {
+        QueryCache cache = new QueryCache(60000, 2);
+        cache.put("d1", "flows", 0, reply("1"));
+        cache.put("d2", "flows", 0, reply("2"));
+        // Reading d1 makes d2 the least recently used
+        cache.get("d1", "flows");
+        cache.put("d3", "flows", 0, reply("3"));
+
+        assertNull(cache.get("d2", "flows"));
+        assertEquals("1", cache.get("d1", "flows").path("id").asText());
+        assertEquals("3", cache.get("d3", "flows").path("id").asText());
+        assertEquals(1, cache.stats().path("evictions").asLong());
+    }
+
+    @Test
+    public void errorReplyIsNotCached() {
+        QueryCache cache = new QueryCache(60000, 16);
+        ObjectNode error = reply("e");
+        error.put("error", true);
+        cache.put("d1", "flows", 0, error);
+
+        assertNull(cache.get("d1", "flows"));
+    }
+
+    @Test
+    public void queryStartedBeforeInvalidateDoesNotStore() {
+        QueryCache cache = new QueryCache(60000, 16);
+        cache.put("d1", "flows", cache.generation("d1"), reply("old"));
+
+        // The query reads the device, then a change lands before it stores
+        long generation = cache.generation("d1");
+        cache.invalidate("d1");
+        cache.put("d1", "flows", generation, reply("stale"));
+
+        assertNull(cache.get("d1", "flows"));
+
+        // A query started after the change stores as usual
+        cache.put("d1", "flows", cache.generation("d1"), reply("new"));
+        assertEquals("new", cache.get("d1", "flows").path("id").asText());
+    }
+
+    @Test
+    public void invalidateDropsOnlyThatDevice() {
+        QueryCache cache = new QueryCache(60000, 16);
+        cache.put("d1", "flows", 0, reply("1"));
+        cache.put("d1", "groups", 0, reply("2"));
+        cache.put("d10", "flows", 0, reply("3"));
+
+        cache.invalidate("d1");
+
+        assertNull(cache.get("d1", "flows"));
+        assertNull(cache.get("d1", "groups"));
+        assertEquals("3", cache.get("d10", "flows").path("id").asText());
+    }
+
+    @Test
+    public void concurrentInvalidateNeverLeavesStaleReply() throws Exception {
+        QueryCache cache = new QueryCache(60000, 16);
+        for (int i = 0; i < 2000; i++) {
+            long generation = cache.generation("d1");
+            Thread writer = new Thread(() -> cache.put("d1", "flows", generation, reply("stale")));
+            writer.start();
+            cache.invalidate("d1");
+            writer.join();
+            // Whichever ran first, a reply read before the change is gone
+            assertNull(cache.get("d1", "flows"));
+        }
+    }
+
+    private static ObjectNode reply(String id) {
+        ObjectNode reply = mapper.createObjectNode();
+        reply.put("error", false);
+        reply.put("id", id);
+        return reply;
+    }
+}
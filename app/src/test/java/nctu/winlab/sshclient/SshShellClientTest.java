@@ -0,0 +1,93 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static nctu.winlab.sshclient.SSHConstants.mapper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SshShellClientTest {
+    private static final String REJECTED = "                        ^\r\n% Invalid input detected at '^' marker.\r\n";
+
+    @Test
+    public void batchReportsRejectedMiddleOperation() {
+        List<ObjectNode> results = replies(3);
+        SshShellClient.assignReplies(results, Arrays.asList(1, 2, 3), Arrays.asList("", REJECTED, ""), null);
+
+        assertFalse(results.get(0).path("error").asBoolean());
+        assertTrue(results.get(1).path("error").asBoolean());
+        assertEquals("% Invalid input detected at '^' marker.", results.get(1).path("msg").asText());
+        assertEquals(REJECTED, results.get(1).path("raw").asText());
+        assertFalse(results.get(2).path("error").asBoolean());
+    }
+
+    @Test
+    public void batchReportsOperationsWithoutReplyWhenShellFails() {
+        List<ObjectNode> results = replies(3);
+        // The second operation queued two main commands; only its first reply arrived
+        SshShellClient.assignReplies(results, Arrays.asList(1, 3, 4), Arrays.asList("", ""), "Shell closed");
+
+        assertFalse(results.get(0).path("error").asBoolean());
+        assertTrue(results.get(1).path("error").asBoolean());
+        assertTrue(results.get(1).path("msg").asText().contains("Shell closed"));
+        assertTrue(results.get(2).path("error").asBoolean());
+        assertFalse(results.get(2).has("raw"));
+    }
+
+    @Test
+    public void batchKeepsErrorOfOperationWhichFailedToQueue() {
+        List<ObjectNode> results = replies(2);
+        results.get(0).put("error", true);
+        results.get(0).put("msg", "Missing field ip");
+        SshShellClient.assignReplies(results, Arrays.asList(0, 1), Arrays.asList(""), null);
+
+        assertEquals("Missing field ip", results.get(0).path("msg").asText());
+        assertFalse(results.get(1).path("error").asBoolean());
+    }
+
+    @Test
+    public void rejectedInterfaceLineIsFound() throws Exception {
+        // The end mark of the previous reply is rejected too, ahead of the
+        // commands written for this one
+        String transcript = "# CMD_END #\r\n" + REJECTED + "(dxs) (Config)#interface 1/0/99\r\n" + REJECTED
+                + "(dxs) (Config)#switchport mode access\r\n(dxs) (Config)## CMD_END #\r\n";
+        ReplyReader reader = new ReplyReader();
+
+        String reply = reader.read(new StringReader(transcript), "switchport mode access");
+
+        assertNull(CliText.errorLine(reply));
+        assertEquals("% Invalid input detected at '^' marker.",
+                     SshShellClient.rejectedSetup(reader.skipped(), "interface 1/0/99", "switchport mode access"));
+    }
+
+    @Test
+    public void acceptedInterfaceLineIsNotBlamedForEarlierOutput() throws Exception {
+        String transcript = "# CMD_END #\r\n" + REJECTED + "(dxs) (Config)#interface 1/0/1\r\n"
+                + "(dxs) (Interface 1/0/1)#switchport mode access\r\n(dxs) (Interface 1/0/1)## CMD_END #\r\n";
+        ReplyReader reader = new ReplyReader();
+
+        reader.read(new StringReader(transcript), "switchport mode access");
+
+        assertNull(SshShellClient.rejectedSetup(reader.skipped(), "interface 1/0/1", "switchport mode access"));
+        // Nothing was written ahead of a command which needed no mode change
+        assertNull(SshShellClient.rejectedSetup(reader.skipped(), "switchport mode access", "switchport mode access"));
+    }
+
+    private static List<ObjectNode> replies(int n) {
+        List<ObjectNode> results = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            ObjectNode res = mapper.createObjectNode();
+            res.put("error", false);
+            res.put("msg", "");
+            results.add(res);
+        }
+        return results;
+    }
+}
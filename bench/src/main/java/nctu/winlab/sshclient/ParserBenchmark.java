@@ -0,0 +1,79 @@
+package nctu.winlab.sshclient;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import nctu.winlab.sshclient.emulator.CliOutputs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of turning switch output into JSON, from the shell stream to
+ * the parsed entries
+ *
+ * Lives in the package of the drivers to reach their package-private
+ * parsers without a connection. Inputs are the output templates of the
+ * emulator scaled to the given number of entries. Run with "-prof gc" for
+ * allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    private static final String FLOWS_CMD = "show openflow installed flows";
+
+    @Param({"10", "1000", "50000"})
+    public int entries;
+
+    private final DXS5000Client dxs = new DXS5000Client("127.0.0.1", "22", "bench", "bench", "DXS-5000");
+    private final DGS3000Client dgs = new DGS3000Client("127.0.0.1", "22", "bench", "bench", "DGS-3000");
+    private final ReplyReader replyReader = new ReplyReader();
+    private String flows;
+    private String groups;
+    private String vlans;
+    private String transcript;
+
+    @Setup
+    public void setUp() {
+        flows = CliOutputs.expand("dxs5000-flows.txt", entries);
+        groups = CliOutputs.expand("dxs5000-groups.txt", entries);
+        vlans = CliOutputs.expand("dgs3000-vlan.txt", entries);
+        // As echoed by the shell, with the end mark rejected as a command
+        transcript = "(DXS-5000) #" + FLOWS_CMD + "\r\n" + flows + "(DXS-5000) #    # CMD_END #\r\n"
+                + "                        ^\r\n% Invalid input detected at '^' marker.\r\n\r\n(DXS-5000) #";
+    }
+
+    @Benchmark
+    public void dxs5000Flows(Blackhole bh) {
+        bh.consume(dxs.parseFlows(flows));
+    }
+
+    @Benchmark
+    public void dxs5000Groups(Blackhole bh) {
+        bh.consume(dxs.processGroups(groups));
+    }
+
+    @Benchmark
+    public void dgs3000Vlans(Blackhole bh) {
+        bh.consume(dgs.parseVlans(vlans));
+    }
+
+    @Benchmark
+    public void recvCmd(Blackhole bh) throws IOException {
+        replyReader.clear();
+        bh.consume(replyReader.read(new StringReader(transcript), FLOWS_CMD));
+    }
+}
@@ -0,0 +1,126 @@
+package nctu.winlab.sshclient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of turning a getFlows reply of one switch into a REST response
+ *
+ * The legacy path copies the reply through the cache, merges it into the
+ * device entry and serializes the result into a String; the direct path
+ * wraps the reply and writes it straight to the response stream. Run with
+ * "-prof gc" to compare gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplyBenchmark {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"100", "20000"})
+    public int flows;
+
+    private ObjectNode reply;
+
+    @Setup
+    public void setUp() {
+        reply = MAPPER.createObjectNode();
+        reply.put("error", false);
+        reply.put("msg", "");
+        ArrayNode flowList = reply.putArray("flows");
+        for (int i = 0; i < flows; i++) {
+            ObjectNode flow = flowList.addObject();
+            flow.put("type", "ACL");
+            ObjectNode matches = flow.putObject("matches");
+            matches.put("Priority", String.valueOf(i % 100));
+            matches.put("In port", "1/0/" + (i % 48 + 1));
+            matches.put("VLAN ID", String.valueOf(i % 4094 + 1));
+            matches.put("Ether type", "0x0800");
+            matches.put("Destination IP", "10.0." + (i / 256 % 256) + "." + (i % 256));
+            ObjectNode actions = flow.putObject("actions");
+            actions.put("Output port", "1/0/" + (i % 48 + 1));
+            actions.put("Group ID", String.valueOf(i % 16));
+            ObjectNode status = flow.putObject("status");
+            status.put("Packet count", String.valueOf(i * 7L));
+            status.put("Byte count", String.valueOf(i * 512L));
+            status.put("Duration", String.valueOf(i));
+        }
+    }
+
+    @Benchmark
+    public void legacyMergeToString(Blackhole bh) {
+        ObjectNode cached = reply.deepCopy();
+        ObjectNode answered = cached.deepCopy();
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("error", false);
+        root.put("msg", "");
+        ObjectNode device = MAPPER.createObjectNode();
+        device.put("name", "switch1");
+        merge(device, answered);
+        root.putArray("devices").add(device);
+        bh.consume(root.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void directWrite(Blackhole bh) throws IOException {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("error", false);
+        root.put("msg", "");
+        root.putArray("devices").add(ReplyWriter.deviceReply("switch1", reply));
+        ReplyWriter.write(root, new DiscardingStream(bh));
+    }
+
+    // The merge SshClientManager used before replies were wrapped in place
+    private static void merge(JsonNode main, JsonNode update) {
+        Iterator<String> fieldnames = update.fieldNames();
+        while (fieldnames.hasNext()) {
+            String fn = fieldnames.next();
+            JsonNode value = main.get(fn);
+            if (value != null && value.isObject()) {
+                merge(value, update.get(fn));
+            } else if (main instanceof ObjectNode) {
+                ((ObjectNode) main).set(fn, update.get(fn));
+            }
+        }
+    }
+
+    private static class DiscardingStream extends OutputStream {
+        private final Blackhole bh;
+
+        private DiscardingStream(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public void write(int b) {
+            bh.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bh.consume(b);
+        }
+    }
+}
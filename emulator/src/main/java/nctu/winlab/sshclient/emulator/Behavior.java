@@ -0,0 +1,107 @@
+package nctu.winlab.sshclient.emulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How an emulated device responds: how long it takes, how much it prints
+ * and after how many lines it stops at a pagination prompt
+ */
+public final class Behavior {
+    public static final Behavior DEFAULT = builder().build();
+
+    private final long latency;
+    private final double jitter;
+    private final int entries;
+    private final int pageLines;
+
+    private Behavior(Builder builder) {
+        this.latency = builder.latency;
+        this.jitter = builder.jitter;
+        this.entries = builder.entries;
+        this.pageLines = builder.pageLines;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Builder toBuilder() {
+        return new Builder().latency(latency).jitter(jitter).entries(entries).pageLines(pageLines);
+    }
+
+    public long latency() {
+        return latency;
+    }
+
+    public double jitter() {
+        return jitter;
+    }
+
+    public int entries() {
+        return entries;
+    }
+
+    public int pageLines() {
+        return pageLines;
+    }
+
+    /**
+     * Delay before answering one command, latency spread by up to jitter
+     * of itself either way
+     *
+     * @return delay in milliseconds
+     */
+    public long delay() {
+        if (latency <= 0) {
+            return 0;
+        }
+        double spread = jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(0, Math.round(latency * (1 + spread)));
+    }
+
+    public static final class Builder {
+        private long latency;
+        private double jitter;
+        private int entries = 10;
+        private int pageLines;
+
+        private Builder() {
+        }
+
+        /**
+         * Time in milliseconds before a command is answered
+         */
+        public Builder latency(long latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * Fraction of the latency by which the delay may vary
+         */
+        public Builder jitter(double jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Number of entries in flow, group, VLAN, host and log tables
+         */
+        public Builder entries(int entries) {
+            this.entries = entries;
+            return this;
+        }
+
+        /**
+         * Lines printed before a pagination prompt; 0 to never paginate
+         */
+        public Builder pageLines(int pageLines) {
+            this.pageLines = pageLines;
+            return this;
+        }
+
+        public Behavior build() {
+            return new Behavior(this);
+        }
+    }
+}
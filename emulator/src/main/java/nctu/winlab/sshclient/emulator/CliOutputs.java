@@ -0,0 +1,85 @@
+package nctu.winlab.sshclient.emulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CLI output of the emulated devices, scaled to any number of entries
+ *
+ * An output template holds one entry between {{record}} and {{end}}, with
+ * the text around it as printed before and after the table. The entry is
+ * repeated with {{n}} and the other placeholders derived from its number;
+ * {{count}} is the number of entries. Lines end in "\r\n" as they do on
+ * the wire.
+ */
+public final class CliOutputs {
+    private static final String RECORD = "{{record}}\n";
+    private static final String END = "{{end}}\n";
+
+    private final Map<String, String> expanded = new ConcurrentHashMap<>();
+
+    /**
+     * Output of a template, expanded once per template and count
+     *
+     * @param name template under outputs/
+     * @param count number of entries
+     * @return CLI output
+     */
+    public String get(String name, int count) {
+        return expanded.computeIfAbsent(name + "#" + count, key -> expand(name, count));
+    }
+
+    /**
+     * Output of a template listing count entries
+     *
+     * @param name template under outputs/
+     * @param count number of entries
+     * @return CLI output
+     */
+    public static String expand(String name, int count) {
+        String text = load(name).replace("{{count}}", String.valueOf(count));
+        int start = text.indexOf(RECORD);
+        if (start < 0) {
+            return wire(text);
+        }
+        int end = text.indexOf(END, start);
+        String record = text.substring(start + RECORD.length(), end);
+        StringBuilder sb = new StringBuilder(text.substring(0, start));
+        for (int n = 1; n <= count; n++) {
+            sb.append(record.replace("{{n}}", String.valueOf(n))
+                    .replace("{{port}}", String.valueOf(n % 48 + 1))
+                    .replace("{{out}}", String.valueOf((n + 1) % 48 + 1))
+                    .replace("{{vlan}}", String.valueOf(n % 4094 + 1))
+                    .replace("{{hi}}", String.format("%02x", (n >> 8) & 0xff))
+                    .replace("{{lo}}", String.format("%02x", n & 0xff)));
+        }
+        sb.append(text.substring(end + END.length()));
+        return wire(sb.toString());
+    }
+
+    private static String wire(String text) {
+        return text.replace("\n", "\r\n");
+    }
+
+    private static String load(String name) {
+        try (InputStream in = CliOutputs.class.getResourceAsStream("/outputs/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No output template " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
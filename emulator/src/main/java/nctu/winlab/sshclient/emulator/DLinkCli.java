@@ -0,0 +1,27 @@
+package nctu.winlab.sshclient.emulator;
+
+/**
+ * Pagination shared by the D-Link switches
+ */
+abstract class DLinkCli extends SwitchCli {
+    protected DLinkCli(EmulatedDevice device, CliOutputs outputs, String... initialModes) {
+        super(device, outputs, initialModes);
+    }
+
+    @Override
+    String morePrompt() {
+        return "CTRL+C ESC q Quit SPACE n Next Page ENTER Next Entry a All";
+    }
+
+    @Override
+    More more(int key) {
+        switch (key) {
+            case 'a':
+                return More.ALL;
+            case 'n':
+                return More.PAGE;
+            default:
+                return super.more(key);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package nctu.winlab.sshclient.emulator;
+
+/**
+ * CLI of the DGS-3000, which has a single mode and repeats every command
+ * before its output
+ */
+final class Dgs3000Cli extends DLinkCli {
+    private static final String AVAILABLE = "Available commands:\r\n"
+            + "..              ?               config          create          delete\r\n"
+            + "disable         enable          logout          show\r\n\r\n";
+
+    Dgs3000Cli(EmulatedDevice device, CliOutputs outputs) {
+        super(device, outputs, "admin");
+        table("show vlan", "dgs3000-vlan.txt", 4094);
+    }
+
+    @Override
+    String prompt() {
+        return device.name() + ":" + mode() + "#";
+    }
+
+    @Override
+    protected String command(String cmd) {
+        if (cmd.equals("disable clipaging") || cmd.equals("enable clipaging")) {
+            setPageLines(cmd.startsWith("disable") ? 0 : -1);
+            return done(cmd);
+        }
+        if (cmd.startsWith("create vlan ") || cmd.startsWith("config vlan ") || cmd.startsWith("delete vlan ")) {
+            return done(cmd);
+        }
+        return AVAILABLE;
+    }
+
+    private String done(String cmd) {
+        return "Command: " + cmd + "\r\n\r\nSuccess.\r\n\r\n";
+    }
+}
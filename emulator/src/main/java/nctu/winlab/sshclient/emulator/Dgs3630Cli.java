@@ -0,0 +1,56 @@
+package nctu.winlab.sshclient.emulator;
+
+/**
+ * CLI of the DGS-3630, which logs administrators in at the privileged
+ * prompt
+ */
+final class Dgs3630Cli extends DLinkCli {
+    private static final String EXEC = "";
+    private static final String PRIVILEGED = "#";
+    private static final String CONFIG = "(config)#";
+    private static final String INVALID = "          ^\r\nInvalid input detected at '^' marker.\r\n\r\n";
+
+    Dgs3630Cli(EmulatedDevice device, CliOutputs outputs) {
+        super(device, outputs, EXEC, PRIVILEGED);
+        table("show openflow configuration", "dgs3630-openflow.txt");
+        table("show openflow flows", "dgs3630-flows.txt");
+        table("show openflow group-desc", "dgs3630-groups.txt");
+        table("show logging", "dgs3630-logging.txt");
+    }
+
+    @Override
+    String prompt() {
+        return device.name() + (mode().equals(EXEC) ? ">" : mode());
+    }
+
+    @Override
+    protected String command(String cmd) {
+        switch (mode()) {
+            case EXEC:
+                if (cmd.equals("enable")) {
+                    enter(PRIVILEGED);
+                    return "";
+                }
+                return INVALID;
+            case PRIVILEGED:
+                if (cmd.equals("configure terminal")) {
+                    enter(CONFIG);
+                    return "";
+                }
+                return INVALID;
+            case CONFIG:
+                if (cmd.startsWith("interface ")) {
+                    enter("(config-if)#");
+                    return "";
+                }
+                if (cmd.startsWith("vlan ")) {
+                    enter("(config-vlan)#");
+                    return "";
+                }
+                break;
+            default:
+                break;
+        }
+        return cmd.startsWith("#") ? INVALID : "";
+    }
+}
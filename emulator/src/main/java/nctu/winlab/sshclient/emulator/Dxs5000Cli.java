@@ -0,0 +1,74 @@
+package nctu.winlab.sshclient.emulator;
+
+/**
+ * CLI of the DXS-5000, which logs in at the unprivileged prompt
+ */
+final class Dxs5000Cli extends SwitchCli {
+    private static final String EXEC = "Exec";
+    private static final String PRIVILEGED = "Privileged";
+    private static final String CONFIG = "Config";
+    private static final String VLAN = "Vlan";
+    private static final String INVALID = "                        ^\r\n% Invalid input detected at '^' marker.\r\n\r\n";
+
+    Dxs5000Cli(EmulatedDevice device, CliOutputs outputs) {
+        super(device, outputs, EXEC);
+        table("show openflow configured controller", "dxs5000-controllers.txt");
+        table("show openflow installed flows", "dxs5000-flows.txt");
+        table("show openflow installed groups", "dxs5000-groups.txt");
+        table("show logging buffered", "dxs5000-logging.txt");
+        table("show vxlan tenant-systems local", "dxs5000-tenant-local.txt");
+        table("show vxlan tenant-systems remote", "dxs5000-tenant-remote.txt");
+        table("show vxlan", "dxs5000-vxlan.txt");
+        table("show vlan", "dxs5000-vlan.txt", 4094);
+    }
+
+    @Override
+    String prompt() {
+        String host = "(" + device.name() + ") ";
+        switch (mode()) {
+            case EXEC:
+                return host + ">";
+            case PRIVILEGED:
+                return host + "#";
+            default:
+                return host + "(" + mode() + ")#";
+        }
+    }
+
+    @Override
+    String morePrompt() {
+        return "--More-- or (q)uit";
+    }
+
+    @Override
+    protected String command(String cmd) {
+        switch (mode()) {
+            case EXEC:
+                if (cmd.equals("enable")) {
+                    enter(PRIVILEGED);
+                    return "";
+                }
+                return INVALID;
+            case PRIVILEGED:
+                if (cmd.equals("configure")) {
+                    enter(CONFIG);
+                    return "";
+                }
+                if (cmd.equals("vlan database")) {
+                    enter(VLAN);
+                    return "";
+                }
+                return INVALID;
+            case CONFIG:
+                if (cmd.startsWith("interface ")) {
+                    enter("Interface " + cmd.substring("interface ".length()));
+                    return "";
+                }
+                break;
+            default:
+                break;
+        }
+        // Configuration commands are accepted without being checked
+        return cmd.startsWith("#") ? INVALID : "";
+    }
+}
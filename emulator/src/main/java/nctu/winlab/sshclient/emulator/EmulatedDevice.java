@@ -0,0 +1,65 @@
+package nctu.winlab.sshclient.emulator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One emulated device, listening on its own port
+ */
+public class EmulatedDevice {
+    private final String name;
+    private final EmulatedModel model;
+    private final int port;
+    private final String username;
+    private final String password;
+    private volatile Behavior behavior;
+    // Settings written through the CLI, kept across sessions
+    private final Map<String, String> settings = new ConcurrentHashMap<>();
+
+    EmulatedDevice(String name, EmulatedModel model, int port, String username, String password,
+                   Behavior behavior) {
+        this.name = name;
+        this.model = model;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.behavior = behavior;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public EmulatedModel model() {
+        return model;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public String username() {
+        return username;
+    }
+
+    public String password() {
+        return password;
+    }
+
+    public Behavior behavior() {
+        return behavior;
+    }
+
+    /**
+     * Change how the device responds, from the next command on
+     *
+     * @param behavior new behavior
+     */
+    public void setBehavior(Behavior behavior) {
+        this.behavior = behavior;
+    }
+
+    Map<String, String> settings() {
+        return settings;
+    }
+}
@@ -0,0 +1,50 @@
+package nctu.winlab.sshclient.emulator;
+
+/**
+ * Device models which can be emulated, named as in the sshclient config
+ */
+public enum EmulatedModel {
+    DGS_3000(true),
+    DGS_3630(true),
+    DXS_5000(true),
+    SERVER(false),
+    DIR_835(false);
+
+    private final boolean shell;
+
+    EmulatedModel(boolean shell) {
+        this.shell = shell;
+    }
+
+    /**
+     * Whether the device is driven through an interactive shell rather
+     * than exec channels
+     */
+    public boolean isShell() {
+        return shell;
+    }
+
+    SwitchCli newCli(EmulatedDevice device, CliOutputs outputs) {
+        switch (this) {
+            case DGS_3000:
+                return new Dgs3000Cli(device, outputs);
+            case DGS_3630:
+                return new Dgs3630Cli(device, outputs);
+            case DXS_5000:
+                return new Dxs5000Cli(device, outputs);
+            default:
+                throw new IllegalStateException(this + " has no shell");
+        }
+    }
+
+    ExecCli newExecCli(EmulatedDevice device) {
+        switch (this) {
+            case SERVER:
+                return new LinuxCli(device);
+            case DIR_835:
+                return new OpenWrtCli(device);
+            default:
+                throw new IllegalStateException(this + " has no exec channel");
+        }
+    }
+}
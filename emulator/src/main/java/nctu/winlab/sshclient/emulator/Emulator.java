@@ -0,0 +1,263 @@
+package nctu.winlab.sshclient.emulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.server.ServerBuilder;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SSH server emulating switches, access points and servers on localhost
+ *
+ * All devices share one server and its I/O threads; each device listens on
+ * a port of its own, which is how a session finds its device. Shell models
+ * answer the commands the drivers send with output scaled to the entry
+ * count of their behavior; exec models run a small set of commands.
+ *
+ * Run standalone with e.g.
+ * "java -jar emulator.jar --devices DXS_5000:200,DGS_3000:50 --latency 20
+ * --entries 1000 --netcfg devices.json" and push devices.json to ONOS as
+ * the network config of the app.
+ */
+public class Emulator implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(Emulator.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    public static final int DEFAULT_BASE_PORT = 20022;
+    public static final String DEFAULT_USERNAME = "admin";
+    public static final String DEFAULT_PASSWORD = "admin";
+
+    private final String host;
+    private final String username;
+    private final String password;
+    private final Map<Integer, EmulatedDevice> devices = new ConcurrentHashMap<>();
+    private final CliOutputs outputs = new CliOutputs();
+    private final ExecutorService executor;
+    private final DeviceServer server;
+
+    /**
+     * Emulator on the default host, with the default credentials
+     */
+    public Emulator() {
+        this(DEFAULT_HOST, DEFAULT_USERNAME, DEFAULT_PASSWORD);
+    }
+
+    /**
+     * @param host address the devices listen on
+     * @param username user name every device accepts
+     * @param password password every device accepts
+     */
+    public Emulator(String host, String username, String password) {
+        this.host = host;
+        this.username = username;
+        this.password = password;
+
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "emulator-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        server = (DeviceServer) ServerBuilder.builder().factory(DeviceServer::new).build();
+        server.setHost(host);
+        // One host key for every device, generated once
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((user, pass, session) -> {
+            EmulatedDevice device = deviceOf(session);
+            return device != null && device.username().equals(user) && device.password().equals(pass);
+        });
+        server.setShellFactory(this::createShell);
+        server.setCommandFactory(this::createCommand);
+    }
+
+    /**
+     * Add a device; it listens right away if the emulator is running
+     *
+     * @param name device name
+     * @param model device model
+     * @param port port to listen on
+     * @param behavior how the device responds
+     * @return the device
+     * @throws IOException if the port cannot be bound
+     */
+    public EmulatedDevice add(String name, EmulatedModel model, int port, Behavior behavior) throws IOException {
+        EmulatedDevice device = new EmulatedDevice(name, model, port, username, password, behavior);
+        if (devices.putIfAbsent(port, device) != null) {
+            throw new IllegalArgumentException("Port " + port + " is already taken by " + devices.get(port).name());
+        }
+        if (server.isStarted()) {
+            server.listen(address(port));
+        }
+        return device;
+    }
+
+    /**
+     * Devices by port
+     */
+    public Map<Integer, EmulatedDevice> devices() {
+        return new TreeMap<>(devices);
+    }
+
+    /**
+     * Start listening on the ports of all devices added so far
+     *
+     * @throws IOException if the server cannot start
+     */
+    public void start() throws IOException {
+        server.start();
+        for (int port : devices.keySet()) {
+            server.listen(address(port));
+        }
+        log.info("Emulating {} devices on {}", devices.size(), host);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(true);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Network config of the sshclient app listing every device
+     *
+     * @return JSON object to push to ONOS as network config
+     */
+    public ObjectNode netcfg() {
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode clientInfos = root.putObject("apps").putObject("nctu.winlab.sshclient")
+                .putObject("SshClientConfig").putArray("clientInfos");
+        for (EmulatedDevice device : devices().values()) {
+            ObjectNode info = clientInfos.addObject();
+            info.put("name", device.name());
+            info.put("ip", host);
+            info.put("port", String.valueOf(device.port()));
+            info.put("username", device.username());
+            info.put("password", device.password());
+            info.put("model", device.model().name());
+        }
+        return root;
+    }
+
+    private Command createShell(ChannelSession channel) throws IOException {
+        EmulatedDevice device = deviceOf(channel.getSession());
+        if (device == null || !device.model().isShell()) {
+            throw new IOException("No shell on this port");
+        }
+        return new SwitchShell(device, device.model().newCli(device, outputs), executor);
+    }
+
+    private Command createCommand(ChannelSession channel, String command) throws IOException {
+        EmulatedDevice device = deviceOf(channel.getSession());
+        if (device == null || device.model().isShell()) {
+            throw new IOException("No exec channel on this port");
+        }
+        return new ExecCommand(device, device.model().newExecCli(device), command, executor);
+    }
+
+    private EmulatedDevice deviceOf(Session session) {
+        SocketAddress address = session.getIoSession().getAcceptanceAddress();
+        if (!(address instanceof InetSocketAddress)) {
+            return null;
+        }
+        return devices.get(((InetSocketAddress) address).getPort());
+    }
+
+    private InetSocketAddress address(int port) {
+        return new InetSocketAddress(host, port);
+    }
+
+    /**
+     * Start devices from the command line and run until killed
+     *
+     * Options: --devices MODEL:COUNT[,MODEL:COUNT...] (default DXS_5000:1),
+     * --host, --base-port, --username, --password, --latency (ms),
+     * --jitter (fraction), --entries, --page-lines (0 disables pagination)
+     * and --netcfg FILE to write the network config for the app.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            opts.put(args[i].substring(2), args[i + 1]);
+        }
+        Behavior behavior = Behavior.builder()
+                .latency(Long.parseLong(opts.getOrDefault("latency", "0")))
+                .jitter(Double.parseDouble(opts.getOrDefault("jitter", "0")))
+                .entries(Integer.parseInt(opts.getOrDefault("entries", "10")))
+                .pageLines(Integer.parseInt(opts.getOrDefault("page-lines", "0")))
+                .build();
+        Emulator emulator = new Emulator(opts.getOrDefault("host", DEFAULT_HOST),
+                                         opts.getOrDefault("username", DEFAULT_USERNAME),
+                                         opts.getOrDefault("password", DEFAULT_PASSWORD));
+
+        int port = Integer.parseInt(opts.getOrDefault("base-port", String.valueOf(DEFAULT_BASE_PORT)));
+        List<String> ranges = new ArrayList<>();
+        for (String spec : opts.getOrDefault("devices", "DXS_5000:1").split(",")) {
+            String[] parts = spec.split(":");
+            EmulatedModel model = EmulatedModel.valueOf(parts[0].trim());
+            int count = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            String prefix = model.name().toLowerCase().replace('_', '-');
+            ranges.add(String.format("%s on %d-%d", model, port, port + count - 1));
+            for (int i = 1; i <= count; i++) {
+                emulator.add(String.format("%s-%03d", prefix, i), model, port++, behavior);
+            }
+        }
+        emulator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                emulator.close();
+            } catch (IOException e) {
+                log.warn("Failed to stop the emulator", e);
+            }
+        }));
+        ranges.forEach(range -> log.info("Emulating {}", range));
+
+        if (opts.containsKey("netcfg")) {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(new File(opts.get("netcfg")), emulator.netcfg());
+            log.info("Network config written to {}", opts.get("netcfg"));
+        }
+        new CountDownLatch(1).await();
+    }
+
+    /**
+     * Server which listens on any number of ports
+     */
+    public static class DeviceServer extends SshServer {
+        @Override
+        public void start() throws IOException {
+            // The port given to the server is not one of the devices
+            setPort(0);
+            super.start();
+            acceptor.unbind();
+        }
+
+        void listen(SocketAddress address) throws IOException {
+            acceptor.bind(address);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package nctu.winlab.sshclient.emulator;
+
+/**
+ * Commands run through exec channels of an emulated host
+ */
+abstract class ExecCli {
+    protected final EmulatedDevice device;
+
+    protected ExecCli(EmulatedDevice device) {
+        this.device = device;
+    }
+
+    /**
+     * Run one command line
+     *
+     * @param command command line as sent by the client
+     * @param username user the session is logged in as
+     * @return output and exit status
+     */
+    abstract Result run(String command, String username);
+
+    static final class Result {
+        final String out;
+        final String err;
+        final int status;
+
+        Result(String out, String err, int status) {
+            this.out = out;
+            this.err = err;
+            this.status = status;
+        }
+
+        static Result ok(String out) {
+            return new Result(out, "", 0);
+        }
+
+        static Result error(String err, int status) {
+            return new Result("", err, status);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package nctu.winlab.sshclient.emulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+
+/**
+ * One command run through an exec channel of an emulated host, answered
+ * after the latency of the device
+ */
+class ExecCommand implements Command, Runnable {
+    private final EmulatedDevice device;
+    private final ExecCli cli;
+    private final String command;
+    private final Executor executor;
+    private OutputStream out;
+    private OutputStream err;
+    private ExitCallback exitCallback;
+    private String username;
+    private volatile Thread thread;
+
+    ExecCommand(EmulatedDevice device, ExecCli cli, String command, Executor executor) {
+        this.device = device;
+        this.cli = cli;
+        this.command = command;
+        this.executor = executor;
+    }
+
+    @Override
+    public void setInputStream(InputStream in) {
+    }
+
+    @Override
+    public void setOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void setErrorStream(OutputStream err) {
+        this.err = err;
+    }
+
+    @Override
+    public void setExitCallback(ExitCallback callback) {
+        this.exitCallback = callback;
+    }
+
+    @Override
+    public void start(ChannelSession channel, Environment env) {
+        username = channel.getSession().getUsername();
+        executor.execute(this);
+    }
+
+    @Override
+    public void destroy(ChannelSession channel) {
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        int status = 1;
+        try {
+            long delay = device.behavior().delay();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            ExecCli.Result res = cli.run(command, username);
+            err.write(res.err.getBytes(StandardCharsets.UTF_8));
+            err.flush();
+            out.write(res.out.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            status = res.status;
+        } catch (InterruptedException | IOException e) {
+            // The channel is gone; nobody waits for the status
+        } finally {
+            thread = null;
+            exitCallback.onExit(status);
+        }
+    }
+}
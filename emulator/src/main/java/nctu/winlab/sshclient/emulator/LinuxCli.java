@@ -0,0 +1,69 @@
+package nctu.winlab.sshclient.emulator;
+
+/**
+ * A few commands of a Linux server, including the "echo password | sudo -S"
+ * form the server driver uses
+ */
+class LinuxCli extends ExecCli {
+    private static final String SUDO = "| sudo -S ";
+
+    LinuxCli(EmulatedDevice device) {
+        super(device);
+    }
+
+    @Override
+    Result run(String command, String username) {
+        String cmd = command.trim();
+        int pipe = cmd.indexOf(SUDO);
+        if (pipe < 0 || !cmd.startsWith("echo ")) {
+            return exec(cmd, username);
+        }
+        String prompt = "[sudo] password for " + username + ": ";
+        if (!cmd.substring("echo ".length(), pipe).trim().equals(device.password())) {
+            return Result.error(prompt + "\nSorry, try again.\nsudo: 1 incorrect password attempt\n", 1);
+        }
+        Result res = exec(cmd.substring(pipe + SUDO.length()).trim(), "root");
+        return new Result(res.out, prompt + res.err, res.status);
+    }
+
+    protected Result exec(String cmd, String username) {
+        String[] words = cmd.split("\\s+", 2);
+        String args = words.length > 1 ? words[1] : "";
+        switch (words[0]) {
+            case "echo":
+                return Result.ok(args + "\n");
+            case "true":
+                return Result.ok("");
+            case "false":
+                return Result.error("", 1);
+            case "hostname":
+                return Result.ok(device.name() + "\n");
+            case "whoami":
+                return Result.ok(username + "\n");
+            case "uname":
+                return Result.ok(args.equals("-a")
+                        ? "Linux " + device.name() + " 4.15.0-generic #1 SMP x86_64 GNU/Linux\n" : "Linux\n");
+            case "uptime":
+                return Result.ok(" 00:00:00 up 1 day,  0:00,  1 user,  load average: 0.00, 0.00, 0.00\n");
+            case "ip":
+                if (args.equals("route") || args.equals("route show")) {
+                    return Result.ok(routes());
+                }
+                return Result.error("Object \"" + args + "\" is unknown, try \"ip help\".\n", 1);
+            default:
+                return Result.error(notFound(words[0]), 127);
+        }
+    }
+
+    protected String notFound(String word) {
+        return "bash: " + word + ": command not found\n";
+    }
+
+    private String routes() {
+        StringBuilder sb = new StringBuilder("default via 192.168.0.1 dev eth0\n");
+        for (int n = 1; n <= device.behavior().entries(); n++) {
+            sb.append(String.format("10.%d.%d.0/24 via 192.168.0.1 dev eth0%n", (n >> 8) & 0xff, n & 0xff));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package nctu.winlab.sshclient.emulator;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The uci and wifi commands of the OpenWrt firmware on the DIR-835
+ *
+ * Settings written with "uci set" persist across sessions on the device;
+ * "uci commit" and "wifi" are accepted without effect.
+ */
+final class OpenWrtCli extends LinuxCli {
+    OpenWrtCli(EmulatedDevice device) {
+        super(device);
+    }
+
+    @Override
+    protected Result exec(String cmd, String username) {
+        String[] words = cmd.split("\\s+", 3);
+        if (words[0].equals("wifi")) {
+            return Result.ok("");
+        }
+        if (!words[0].equals("uci")) {
+            return super.exec(cmd, username);
+        }
+        String sub = words.length > 1 ? words[1] : "";
+        String arg = words.length > 2 ? words[2] : "";
+        Map<String, String> settings = device.settings();
+        switch (sub) {
+            case "set":
+                int eq = arg.indexOf('=');
+                if (eq <= 0) {
+                    return Result.error("uci: Invalid argument\n", 1);
+                }
+                settings.put(arg.substring(0, eq), arg.substring(eq + 1));
+                return Result.ok("");
+            case "get":
+                String value = settings.get(arg);
+                return value == null ? Result.error("uci: Entry not found\n", 1) : Result.ok(value + "\n");
+            case "commit":
+                return Result.ok("");
+            case "show":
+                StringBuilder sb = new StringBuilder();
+                new TreeMap<>(settings).forEach((key, v) -> {
+                    if (key.startsWith(arg)) {
+                        sb.append(key).append("='").append(v).append("'\n");
+                    }
+                });
+                return Result.ok(sb.toString());
+            default:
+                return Result.error("Usage: uci [<options>] <command> [<arguments>]\n", 1);
+        }
+    }
+
+    @Override
+    protected String notFound(String word) {
+        return "-ash: " + word + ": not found\n";
+    }
+}
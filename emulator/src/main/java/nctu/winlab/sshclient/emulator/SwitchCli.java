@@ -0,0 +1,157 @@
+package nctu.winlab.sshclient.emulator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line of one shell session on an emulated switch
+ *
+ * Tracks the mode stack behind the prompt and answers show commands from
+ * output templates scaled to the entry count of the device. Anything else
+ * is left to the model.
+ */
+abstract class SwitchCli {
+    /**
+     * What a key pressed at the pagination prompt asks for
+     */
+    enum More {
+        QUIT,
+        LINE,
+        PAGE,
+        ALL
+    }
+
+    protected final EmulatedDevice device;
+    private final CliOutputs outputs;
+    private final Map<String, Table> tables = new HashMap<>();
+    private final Deque<String> modes = new ArrayDeque<>();
+    // Page length set in this session; -1 to follow the device behavior
+    private int pageLines = -1;
+    private boolean loggedOut;
+
+    protected SwitchCli(EmulatedDevice device, CliOutputs outputs, String... initialModes) {
+        this.device = device;
+        this.outputs = outputs;
+        for (String mode : initialModes) {
+            modes.push(mode);
+        }
+    }
+
+    /**
+     * Prompt of the current mode
+     */
+    abstract String prompt();
+
+    /**
+     * Prompt shown when a page of output is full
+     */
+    abstract String morePrompt();
+
+    /**
+     * Meaning of a key pressed at the pagination prompt
+     */
+    More more(int key) {
+        switch (key) {
+            case ' ':
+                return More.PAGE;
+            case '\r':
+            case '\n':
+                return More.LINE;
+            default:
+                return More.QUIT;
+        }
+    }
+
+    /**
+     * Run a command which is not a show command or a common one
+     *
+     * @param cmd command with single spaces between words
+     * @return output
+     */
+    protected abstract String command(String cmd);
+
+    /**
+     * Run one line typed into the shell
+     *
+     * @param line line without its line break
+     * @return output, ending in a line break unless empty
+     */
+    String run(String line) {
+        String cmd = line.trim().replaceAll("\\s+", " ");
+        if (cmd.isEmpty()) {
+            return "";
+        }
+        if (cmd.equals("exit") || cmd.equals("logout")) {
+            exit();
+            return "";
+        }
+        if (cmd.startsWith("terminal length ")) {
+            try {
+                pageLines = Integer.parseInt(cmd.substring("terminal length ".length()));
+                return "";
+            } catch (NumberFormatException e) {
+                return command(cmd);
+            }
+        }
+        Table table = tables.get(cmd);
+        if (table != null) {
+            return outputs.get(table.template, Math.min(device.behavior().entries(), table.maxEntries));
+        }
+        return command(cmd);
+    }
+
+    /**
+     * Answer a show command from an output template
+     *
+     * @param cmd command
+     * @param template template under outputs/
+     * @param maxEntries most entries the table can hold on this model
+     */
+    protected void table(String cmd, String template, int maxEntries) {
+        tables.put(cmd, new Table(template, maxEntries));
+    }
+
+    protected void table(String cmd, String template) {
+        table(cmd, template, Integer.MAX_VALUE);
+    }
+
+    protected String mode() {
+        return modes.peek();
+    }
+
+    protected void enter(String mode) {
+        modes.push(mode);
+    }
+
+    /**
+     * Leave the current mode, logging out when leaving the first one
+     */
+    protected void exit() {
+        modes.pop();
+        loggedOut = modes.isEmpty();
+    }
+
+    protected void setPageLines(int pageLines) {
+        this.pageLines = pageLines;
+    }
+
+    int pageLines() {
+        return pageLines < 0 ? device.behavior().pageLines() : pageLines;
+    }
+
+    boolean loggedOut() {
+        return loggedOut;
+    }
+
+    private static final class Table {
+        private final String template;
+        private final int maxEntries;
+
+        private Table(String template, int maxEntries) {
+            this.template = template;
+            this.maxEntries = maxEntries;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package nctu.winlab.sshclient.emulator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Interactive shell of an emulated switch
+ *
+ * Echoes what is typed as a terminal would, answers each line after the
+ * latency of the device and stops at a pagination prompt whenever a page
+ * of output is full. Keys sent ahead of time are consumed in order, so
+ * pagination keys queued behind a command answer its prompts.
+ */
+class SwitchShell implements Command, Runnable {
+    private static final Logger log = LoggerFactory.getLogger(SwitchShell.class);
+
+    private final EmulatedDevice device;
+    private final SwitchCli cli;
+    private final Executor executor;
+    private InputStream in;
+    private OutputStream out;
+    private ExitCallback exitCallback;
+    private volatile Thread thread;
+
+    SwitchShell(EmulatedDevice device, SwitchCli cli, Executor executor) {
+        this.device = device;
+        this.cli = cli;
+        this.executor = executor;
+    }
+
+    @Override
+    public void setInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public void setOutputStream(OutputStream out) {
+        this.out = new BufferedOutputStream(out);
+    }
+
+    @Override
+    public void setErrorStream(OutputStream err) {
+    }
+
+    @Override
+    public void setExitCallback(ExitCallback callback) {
+        this.exitCallback = callback;
+    }
+
+    @Override
+    public void start(ChannelSession channel, Environment env) {
+        executor.execute(this);
+    }
+
+    @Override
+    public void destroy(ChannelSession channel) {
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        int status = 0;
+        try {
+            write(cli.prompt());
+            StringBuilder line = new StringBuilder();
+            boolean cr = false;
+            int c;
+            while (!cli.loggedOut() && (c = read()) >= 0) {
+                // A line break sent as "\r\n" ends a single line
+                if (c == '\n' && cr) {
+                    cr = false;
+                    continue;
+                }
+                cr = c == '\r';
+                if (c == '\r' || c == '\n') {
+                    write("\r\n");
+                    respond(line.toString());
+                    line.setLength(0);
+                    if (!cli.loggedOut()) {
+                        write(cli.prompt());
+                    }
+                } else if (c == '\b' || c == 0x7f) {
+                    if (line.length() > 0) {
+                        line.setLength(line.length() - 1);
+                        write("\b \b");
+                    }
+                } else {
+                    line.append((char) c);
+                    out.write(c);
+                }
+            }
+            out.flush();
+        } catch (InterruptedIOException | InterruptedException e) {
+            status = 1;
+        } catch (IOException e) {
+            log.debug("Shell of {} closed: {}", device.name(), e.getMessage());
+            status = 1;
+        } finally {
+            thread = null;
+            exitCallback.onExit(status);
+        }
+    }
+
+    private void respond(String line) throws IOException, InterruptedException {
+        if (!line.trim().isEmpty()) {
+            long delay = device.behavior().delay();
+            if (delay > 0) {
+                out.flush();
+                Thread.sleep(delay);
+            }
+        }
+        page(cli.run(line));
+    }
+
+    private void page(String output) throws IOException {
+        int pageLines = cli.pageLines();
+        if (pageLines <= 0) {
+            write(output);
+            return;
+        }
+        int shown = 0;
+        int from = 0;
+        while (from < output.length()) {
+            if (shown == pageLines) {
+                String prompt = cli.morePrompt();
+                write(prompt);
+                int key = read();
+                char[] blank = new char[prompt.length()];
+                Arrays.fill(blank, ' ');
+                write("\r" + new String(blank) + "\r");
+                SwitchCli.More more = key < 0 ? SwitchCli.More.QUIT : cli.more(key);
+                if (more == SwitchCli.More.QUIT) {
+                    return;
+                }
+                shown = more == SwitchCli.More.PAGE ? 0 : more == SwitchCli.More.LINE ? pageLines - 1 : Integer.MIN_VALUE;
+            }
+            int eol = output.indexOf('\n', from);
+            int to = eol < 0 ? output.length() : eol + 1;
+            write(output.substring(from, to));
+            from = to;
+            shown++;
+        }
+    }
+
+    // Output goes out whenever the shell is about to wait for input
+    private int read() throws IOException {
+        if (in.available() == 0) {
+            out.flush();
+        }
+        return in.read();
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
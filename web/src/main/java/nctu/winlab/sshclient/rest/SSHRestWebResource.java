@@ -2,6 +2,9 @@ package nctu.winlab.sshclient.rest;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -11,31 +14,95 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import org.glassfish.jersey.server.ChunkedOutput;
 import org.onosproject.rest.AbstractWebResource;
 
+import nctu.winlab.sshclient.ReplyWriter;
+import nctu.winlab.sshclient.RequestOptions;
+import nctu.winlab.sshclient.SshClientAsyncService;
 import nctu.winlab.sshclient.SshClientService;
 
 import static org.onlab.util.Tools.readTreeFromStream;
 
 @Path(value="devices")
 public class SSHRestWebResource extends AbstractWebResource {
+    // Requests are suspended while devices work, so a servlet thread is
+    // only held for parsing the request and writing the reply
+    private static final long REQUEST_TIMEOUT = 120000;
+    private static final String NDJSON = "application/x-ndjson";
+
     @GET
     public Response queryDevices() {
         SshClientService clientService = get(SshClientService.class);
         return Response.ok(clientService.getDevices().toString(), MediaType.APPLICATION_JSON_TYPE).build();
     }
 
+    @GET
+    @Path(value="queues")
+    public Response queryQueues() {
+        SshClientService clientService = get(SshClientService.class);
+        return Response.ok(clientService.getQueueStats().toString(), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    @GET
+    @Path(value="cache")
+    public Response queryCache() {
+        SshClientService clientService = get(SshClientService.class);
+        return Response.ok(clientService.getCacheStats().toString(), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    @GET
+    @Path(value="breakers")
+    public Response queryBreakers() {
+        SshClientService clientService = get(SshClientService.class);
+        return Response.ok(clientService.getBreakerStats().toString(), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    @GET
+    @Path(value="sessions")
+    public Response querySessions() {
+        SshClientService clientService = get(SshClientService.class);
+        return Response.ok(clientService.getSessionStats().toString(), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    @GET
+    @Path(value="readiness")
+    public Response queryReadiness() {
+        SshClientService clientService = get(SshClientService.class);
+        return Response.ok(clientService.getReadiness().toString(), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    @GET
+    @Path(value="metrics")
+    public Response queryMetrics() {
+        SshClientService clientService = get(SshClientService.class);
+        return Response.ok(clientService.getMetrics().toString(), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
     @GET
     @Path(value="controller/{switchName}")
-    public Response queryController(@PathParam(value="switchName") String switchName) {
+    public void queryController(@PathParam(value="switchName") String switchName,
+                                @QueryParam(value = "fresh") boolean fresh,
+                                @QueryParam(value = "stream") boolean stream,
+                                @QueryParam(value = "timing") boolean timing,
+                                @QueryParam(value = "timeoutMs") long timeoutMs,
+                                @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        return Response.ok(clientService.getController(switchName).toString(), MediaType.APPLICATION_JSON_TYPE).build();
+        if (stream) {
+            stream(response, options(fresh, timing, timeoutMs), service -> service.getController(switchName));
+            return;
+        }
+        resume(response, clientService.async().withOptions(options(fresh, timing, timeoutMs)).getController(switchName));
     }
 
     /**
@@ -49,11 +116,14 @@ public class SSHRestWebResource extends AbstractWebResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value="controller/{switchName}")
-    public Response setController(@PathParam(value="switchName") String switchName,
-                                  InputStream stream) {
+    public void setController(@PathParam(value="switchName") String switchName,
+                              InputStream stream,
+                              @QueryParam(value = "timing") boolean timing,
+                              @QueryParam(value = "timeoutMs") long timeoutMs,
+                              @Suspended AsyncResponse response) {
         
         SshClientService clientService = get(SshClientService.class);
-        ObjectNode root;
+        CompletableFuture<ObjectNode> root;
         try {
             ObjectNode jsonTree = readTreeFromStream(mapper(), stream);
             String ip = jsonTree.path("ip").asText("");
@@ -62,12 +132,12 @@ public class SSHRestWebResource extends AbstractWebResource {
             if (ip == "") {
                 throw new IllegalArgumentException("there is need for controller IP address");
             }
-            root = clientService.setController(switchName, ip, port);
+            root = clientService.async().withOptions(options(false, timing, timeoutMs)).setController(switchName, ip, port);
         } catch (IOException ex) {
             throw new IllegalArgumentException(ex);
         }
         
-        return Response.ok(root).build();
+        resume(response, root);
     }
 
     /**
@@ -81,47 +151,83 @@ public class SSHRestWebResource extends AbstractWebResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value = "controller/{switchName}")
-    public Response unsetController(@PathParam(value="switchName") String switchName, 
-                                    InputStream stream) {
+    public void unsetController(@PathParam(value="switchName") String switchName, 
+                                InputStream stream,
+                                @QueryParam(value = "timing") boolean timing,
+                                @QueryParam(value = "timeoutMs") long timeoutMs,
+                                @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        ObjectNode root;
+        CompletableFuture<ObjectNode> root;
         try {
             ObjectNode jsonTree = readTreeFromStream(mapper(), stream);
             String ip = jsonTree.get("ip").asText("");
 
             if (ip == "")
                 throw new IllegalArgumentException("Please specify controller IP address");
-            root = clientService.unsetController(switchName, ip);
+            root = clientService.async().withOptions(options(false, timing, timeoutMs)).unsetController(switchName, ip);
         } catch (IOException ex) {
             throw new IllegalArgumentException(ex);
         }
-        return Response.ok(root).build();
+        resume(response, root);
     }
 
     @GET
     @Path(value="flows/{switchName}")
-    public Response queryFlows(@PathParam(value="switchName") String switchName) {
+    public void queryFlows(@PathParam(value="switchName") String switchName,
+                           @QueryParam(value = "fresh") boolean fresh,
+                           @QueryParam(value = "stream") boolean stream,
+                           @QueryParam(value = "timing") boolean timing,
+                           @QueryParam(value = "timeoutMs") long timeoutMs,
+                           @Suspended AsyncResponse response) {
+        SshClientService clientService = get(SshClientService.class);
+        if (stream) {
+            stream(response, options(fresh, timing, timeoutMs), service -> service.getFlows(switchName));
+            return;
+        }
+        resume(response, clientService.async().withOptions(options(fresh, timing, timeoutMs)).getFlows(switchName));
+    }
+
+    /**
+     * Get flows and groups changed since a version; the full lists are
+     * returned if the version is 0 or too old
+     */
+    @GET
+    @Path(value="flows/{switchName}/changes")
+    public void queryFlowChanges(@PathParam(value="switchName") String switchName,
+                                 @QueryParam(value = "since") long since,
+                                 @QueryParam(value = "fresh") boolean fresh,
+                                 @QueryParam(value = "timeoutMs") long timeoutMs,
+                                 @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        return Response.ok(clientService.getFlows(switchName).toString(), MediaType.APPLICATION_JSON_TYPE).build();
+        resume(response, clientService.async().withOptions(options(fresh, false, timeoutMs)).getFlowChanges(switchName, since));
     }
 
     @GET
     @Path(value="groups/{switchName}")
-    public Response queryGroups(@PathParam(value="switchName") String switchName) {
+    public void queryGroups(@PathParam(value="switchName") String switchName,
+                            @QueryParam(value = "fresh") boolean fresh,
+                            @QueryParam(value = "stream") boolean stream,
+                            @QueryParam(value = "timing") boolean timing,
+                            @QueryParam(value = "timeoutMs") long timeoutMs,
+                            @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        return Response.ok(clientService.getGroups(switchName).toString(), MediaType.APPLICATION_JSON_TYPE).build();
+        if (stream) {
+            stream(response, options(fresh, timing, timeoutMs), service -> service.getGroups(switchName));
+            return;
+        }
+        resume(response, clientService.async().withOptions(options(fresh, timing, timeoutMs)).getGroups(switchName));
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value = "log/{switchName}")
-    public Response generateLog(@PathParam(value="switchName") String switchName,
-                                @QueryParam(value = "filename") String filename) {
+    public void generateLog(@PathParam(value="switchName") String switchName,
+                            @QueryParam(value = "filename") String filename,
+                            @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        if (filename == "")
+        if (filename == null || filename.isEmpty())
             throw new IllegalArgumentException("Please specify filename; otherwise, it will output to ONOS logs");
-        clientService.getLogs(switchName, filename);
-        return Response.ok().build();
+        resume(response, clientService.async().getLogs(switchName, filename));
     }
 
     /**
@@ -135,10 +241,13 @@ public class SSHRestWebResource extends AbstractWebResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value = "command/{serverName}")
-    public Response execCommand(@PathParam(value="serverName") String serverName, 
-                                    InputStream stream) {
+    public void execCommand(@PathParam(value="serverName") String serverName, 
+                            InputStream stream,
+                            @QueryParam(value = "timing") boolean timing,
+                            @QueryParam(value = "timeoutMs") long timeoutMs,
+                            @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        ObjectNode root;
+        CompletableFuture<ObjectNode> root;
 
         try {
             ObjectNode jsonTree = readTreeFromStream(mapper(), stream);
@@ -146,11 +255,11 @@ public class SSHRestWebResource extends AbstractWebResource {
 
             if (cmd == "")
                 throw new IllegalArgumentException("Please specify your command");
-            root = clientService.execCommand(serverName, cmd);
+            root = clientService.async().withOptions(options(false, timing, timeoutMs)).execCommand(serverName, cmd);
         } catch (IOException ex) {
             throw new IllegalArgumentException(ex);
         }
-        return Response.ok(root).build();
+        resume(response, root);
     }
 
     /**
@@ -164,10 +273,13 @@ public class SSHRestWebResource extends AbstractWebResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value = "scommand/{serverName}")
-    public Response execSudoCommand(@PathParam(value="serverName") String serverName, 
-                                    InputStream stream) {
+    public void execSudoCommand(@PathParam(value="serverName") String serverName, 
+                                InputStream stream,
+                                @QueryParam(value = "timing") boolean timing,
+                                @QueryParam(value = "timeoutMs") long timeoutMs,
+                                @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        ObjectNode root;
+        CompletableFuture<ObjectNode> root;
 
         try {
             ObjectNode jsonTree = readTreeFromStream(mapper(), stream);
@@ -175,11 +287,11 @@ public class SSHRestWebResource extends AbstractWebResource {
 
             if (cmd == "")
                 throw new IllegalArgumentException("Please specify your command");
-            root = clientService.execSudoCommand(serverName, cmd);
+            root = clientService.async().withOptions(options(false, timing, timeoutMs)).execSudoCommand(serverName, cmd);
         } catch (IOException ex) {
             throw new IllegalArgumentException(ex);
         }
-        return Response.ok(root).build();
+        resume(response, root);
     }
 
     /**
@@ -193,9 +305,13 @@ public class SSHRestWebResource extends AbstractWebResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value = "ssid/{apName}")
-    public Response setSSID(@PathParam(value="apName") String apName, 
-                                    InputStream stream) {
+    public void setSSID(@PathParam(value="apName") String apName, 
+                        InputStream stream,
+                        @QueryParam(value = "timing") boolean timing,
+                        @QueryParam(value = "timeoutMs") long timeoutMs,
+                        @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
+        CompletableFuture<ObjectNode> root;
 
         try {
             ObjectNode jsonTree = readTreeFromStream(mapper(), stream);
@@ -204,11 +320,11 @@ public class SSHRestWebResource extends AbstractWebResource {
 
             if (ssid == "" || ifname == "")
                 throw new IllegalArgumentException("Please specify SSID of AP");
-            clientService.setSsid(apName, ifname, ssid);
+            root = clientService.async().withOptions(options(false, timing, timeoutMs)).setSsid(apName, ifname, ssid);
         } catch (IOException ex) {
             throw new IllegalArgumentException(ex);
         }
-        return Response.ok().build();
+        resume(response, root);
     }
 
     /**
@@ -222,21 +338,24 @@ public class SSHRestWebResource extends AbstractWebResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value = "vxlanloopback/{switchName}")
-    public Response setVxlanSourceInterfaceLoopback(@PathParam(value="switchName") String switchName, 
-                                    InputStream stream) {
+    public void setVxlanSourceInterfaceLoopback(@PathParam(value="switchName") String switchName, 
+                                                InputStream stream,
+                                                @QueryParam(value = "timing") boolean timing,
+                                                @QueryParam(value = "timeoutMs") long timeoutMs,
+                                                @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        ObjectNode root;
+        CompletableFuture<ObjectNode> root;
         try {
             ObjectNode jsonTree = readTreeFromStream(mapper(), stream);
             String loopbackId = jsonTree.get("id").asText("");
 
             if (loopbackId == "")
                 throw new IllegalArgumentException("Please specify VXLAN Source loopback ID");
-            root = clientService.setVxlanSourceInterfaceLoopback(switchName, loopbackId);
+            root = clientService.async().withOptions(options(false, timing, timeoutMs)).setVxlanSourceInterfaceLoopback(switchName, loopbackId);
         } catch (IOException ex) {
             throw new IllegalArgumentException(ex);
         }
-        return Response.ok(root).build();
+        resume(response, root);
     }
 
     /**
@@ -250,10 +369,13 @@ public class SSHRestWebResource extends AbstractWebResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value = "vxlanvlan/{switchName}")
-    public Response setVxlanVlan(@PathParam(value="switchName") String switchName, 
-                                    InputStream stream) {
+    public void setVxlanVlan(@PathParam(value="switchName") String switchName, 
+                             InputStream stream,
+                             @QueryParam(value = "timing") boolean timing,
+                             @QueryParam(value = "timeoutMs") long timeoutMs,
+                             @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        ObjectNode root;
+        CompletableFuture<ObjectNode> root;
         try {
             ObjectNode jsonTree = readTreeFromStream(mapper(), stream);
             String vnid = jsonTree.get("vnid").asText("");
@@ -261,11 +383,11 @@ public class SSHRestWebResource extends AbstractWebResource {
 
             if (vnid == "" || vid == "")
                 throw new IllegalArgumentException("Please specify VNI or VLAN ID");
-            root = clientService.setVxlanVlan(switchName, vnid, vid);
+            root = clientService.async().withOptions(options(false, timing, timeoutMs)).setVxlanVlan(switchName, vnid, vid);
         } catch (IOException ex) {
             throw new IllegalArgumentException(ex);
         }
-        return Response.ok(root).build();
+        resume(response, root);
     }
 
     /**
@@ -279,10 +401,13 @@ public class SSHRestWebResource extends AbstractWebResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value = "vtep/{switchName}")
-    public Response setVxlanVtep(@PathParam(value="switchName") String switchName, 
-                                    InputStream stream) {
+    public void setVxlanVtep(@PathParam(value="switchName") String switchName, 
+                             InputStream stream,
+                             @QueryParam(value = "timing") boolean timing,
+                             @QueryParam(value = "timeoutMs") long timeoutMs,
+                             @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        ObjectNode root;
+        CompletableFuture<ObjectNode> root;
         try {
             ObjectNode jsonTree = readTreeFromStream(mapper(), stream);
             String vnid = jsonTree.get("vnid").asText("");
@@ -291,21 +416,24 @@ public class SSHRestWebResource extends AbstractWebResource {
 
             if (vnid == "" || ip == "")
                 throw new IllegalArgumentException("Please specify both VNI and IP address");
-            root = clientService.setVxlanVtep(switchName, vnid, ip, mac);
+            root = clientService.async().withOptions(options(false, timing, timeoutMs)).setVxlanVtep(switchName, vnid, ip, mac);
         } catch (IOException ex) {
             throw new IllegalArgumentException(ex);
         }
-        return Response.ok(root).build();
+        resume(response, root);
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value = "vxlan/{switchName}")
-    public Response setVxlanStatus(@PathParam(value = "switchName") String switchName,
-                                   InputStream stream) {
+    public void setVxlanStatus(@PathParam(value = "switchName") String switchName,
+                               InputStream stream,
+                               @QueryParam(value = "timing") boolean timing,
+                               @QueryParam(value = "timeoutMs") long timeoutMs,
+                               @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        ObjectNode root;
+        CompletableFuture<ObjectNode> root;
 
         try {
             ObjectNode jsonTree = readTreeFromStream(mapper(), stream);
@@ -313,19 +441,168 @@ public class SSHRestWebResource extends AbstractWebResource {
 
             if (flag.isMissingNode())
                 throw new IllegalArgumentException("Please specify status of VXLAN functionality");
-            root = clientService.setVxlanStatus(switchName, flag.asBoolean());
+            root = clientService.async().withOptions(options(false, timing, timeoutMs)).setVxlanStatus(switchName, flag.asBoolean());
         } catch (IOException ex) {
             throw new IllegalArgumentException(ex);
         }
 
-        return Response.ok(root).build();
+        resume(response, root);
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path(value = "vxlan/{switchName}")
-    public Response showVxlan(@PathParam(value = "switchName") String switchName) {
+    public void showVxlan(@PathParam(value = "switchName") String switchName,
+                          @QueryParam(value = "fresh") boolean fresh,
+                          @QueryParam(value = "timing") boolean timing,
+                          @QueryParam(value = "timeoutMs") long timeoutMs,
+                          @Suspended AsyncResponse response) {
+        SshClientService clientService = get(SshClientService.class);
+        resume(response, clientService.async().withOptions(options(fresh, timing, timeoutMs)).showVxlan(switchName));
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path(value = "tenant/local/{switchName}")
+    public void showVxlanTenantSystemLocal(@PathParam(value = "switchName") String switchName,
+                                           @QueryParam(value = "fresh") boolean fresh,
+                                           @QueryParam(value = "timing") boolean timing,
+                                           @QueryParam(value = "timeoutMs") long timeoutMs,
+                                           @Suspended AsyncResponse response) {
         SshClientService clientService = get(SshClientService.class);
-        return Response.ok(clientService.showVxlan(switchName)).build();
+        resume(response, clientService.async().withOptions(options(fresh, timing, timeoutMs)).showVxlanTenantSystemLocal(switchName));
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path(value = "tenant/remote/{switchName}")
+    public void showVxlanTenantSystemRemote(@PathParam(value = "switchName") String switchName,
+                                            @QueryParam(value = "fresh") boolean fresh,
+                                            @QueryParam(value = "timing") boolean timing,
+                                            @QueryParam(value = "timeoutMs") long timeoutMs,
+                                            @Suspended AsyncResponse response) {
+        SshClientService clientService = get(SshClientService.class);
+        resume(response, clientService.async().withOptions(options(fresh, timing, timeoutMs)).showVxlanTenantSystemRemote(switchName));
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path(value = "vlan/{switchName}")
+    public void showVlan(@PathParam(value = "switchName") String switchName,
+                         @QueryParam(value = "fresh") boolean fresh,
+                         @QueryParam(value = "timing") boolean timing,
+                         @QueryParam(value = "timeoutMs") long timeoutMs,
+                         @Suspended AsyncResponse response) {
+        SshClientService clientService = get(SshClientService.class);
+        resume(response, clientService.async().withOptions(options(fresh, timing, timeoutMs)).showVlan(switchName));
+    }
+
+    /**
+     * Apply several setter operations on a switch in a single round trip
+     *
+     * @param switchName switch name
+     * @param stream list of operations
+     * @onos.rsModel batch
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path(value = "batch/{switchName}")
+    public void batch(@PathParam(value = "switchName") String switchName,
+                      InputStream stream,
+                      @QueryParam(value = "timing") boolean timing,
+                      @QueryParam(value = "timeoutMs") long timeoutMs,
+                      @Suspended AsyncResponse response) {
+        SshClientService clientService = get(SshClientService.class);
+        CompletableFuture<ObjectNode> root;
+
+        try {
+            ObjectNode jsonTree = readTreeFromStream(mapper(), stream);
+            JsonNode operations = jsonTree.path("operations");
+
+            if (!operations.isArray() || operations.size() == 0)
+                throw new IllegalArgumentException("Please specify a list of operations");
+            root = clientService.async().withOptions(options(false, timing, timeoutMs)).batch(switchName, (ArrayNode) operations);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+
+        resume(response, root);
+    }
+
+    // Queries are answered from polled snapshots unless fresh data is asked
+    // for; timing adds the time of each phase to the replies of devices, and
+    // timeoutMs bounds the request, replying timedOut for devices not done
+    private RequestOptions options(boolean fresh, boolean timing, long timeoutMs) {
+        return RequestOptions.builder().fresh(fresh).timing(timing).timeout(Math.max(0, timeoutMs)).build();
+    }
+
+    /**
+     * Answer a request with one JSON record per device, separated by
+     * newlines, each written as soon as the device answers. Records are
+     * written from the completion of each device, so no servlet thread waits
+     * for the devices. Devices still busy at the request deadline, timeoutMs
+     * or else REQUEST_TIMEOUT, are written as timed out; an error of the
+     * whole request ends the stream with an error record.
+     */
+    private void stream(AsyncResponse response, RequestOptions options,
+                        Function<SshClientAsyncService, CompletableFuture<ObjectNode>> call) {
+        SshClientService clientService = get(SshClientService.class);
+        ChunkedOutput<StreamingOutput> output = new ChunkedOutput<>(StreamingOutput.class);
+        long timeout = options.timeout() > 0 ? options.timeout() : REQUEST_TIMEOUT;
+        SshClientAsyncService service = clientService.async().withOptions(
+                options.toBuilder().timeout(timeout).deviceListener(record -> writeRecord(output, record)).build());
+
+        response.resume(Response.ok(output, NDJSON).build());
+        call.apply(service).whenComplete((root, ex) -> {
+            if (ex != null) {
+                writeRecord(output, errorRecord(ex.getMessage()));
+            } else if (root.path("error").asBoolean(false)) {
+                writeRecord(output, root);
+            }
+            try {
+                output.close();
+            } catch (IOException e) {
+                // The client went away; nothing left to tell it
+            }
+        });
+    }
+
+    private void writeRecord(ChunkedOutput<StreamingOutput> output, ObjectNode record) {
+        try {
+            output.write(out -> ReplyWriter.writeRecord(record, out));
+        } catch (IOException e) {
+            // The client went away; the remaining devices still finish
+        }
+    }
+
+    private ObjectNode errorRecord(String msg) {
+        ObjectNode record = mapper().createObjectNode();
+        record.put("error", true);
+        record.put("msg", msg == null ? "unknown error" : msg);
+        return record;
+    }
+
+    /**
+     * Answer a suspended request once the reply is ready, or with a gateway
+     * timeout if the devices take longer than the request is allowed to wait.
+     */
+    private void resume(AsyncResponse response, CompletableFuture<ObjectNode> reply) {
+        response.setTimeout(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        response.setTimeoutHandler(r -> {
+            ObjectNode root = mapper().createObjectNode();
+            root.put("error", true);
+            root.put("msg", "Request timed out after " + REQUEST_TIMEOUT + " ms");
+            r.resume(Response.status(Response.Status.GATEWAY_TIMEOUT)
+                             .entity(root.toString()).type(MediaType.APPLICATION_JSON_TYPE).build());
+        });
+        reply.whenComplete((root, ex) -> {
+            if (ex != null) {
+                response.resume(ex);
+            } else {
+                StreamingOutput output = out -> ReplyWriter.write(root, out);
+                response.resume(Response.ok(output, MediaType.APPLICATION_JSON_TYPE).build());
+            }
+        });
     }
 }